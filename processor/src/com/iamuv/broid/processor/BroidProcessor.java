@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * 编译期为{@code @Table}与{@code @Preferences}类生成映射, 运行时由DaoFactory按类名查找 <br>
+ * <ul>
+ * <li>生成的类与映射类在同一个包中, 类名为映射类的类名加_SQLiteMapper或_PreferencesMapper</li>
+ * <li>非private属性直接访问, private属性通过getter与setter访问</li>
+ * <li>属性无法访问, 属性为final, 或映射类无法直接实例化时不生成, 运行时使用反射映射</li>
+ * <li>注解按名称读取, 不依赖broid本身</li>
+ * <li>processor工程导出为jar后加入应用工程的Factory Path或javac的-processorpath, 通过META-INF/services注册</li>
+ * </ul>
+ */
+@SupportedAnnotationTypes({ BroidProcessor.TABLE, BroidProcessor.PREFERENCES })
+public class BroidProcessor extends AbstractProcessor {
+
+	static final String TABLE = "com.iamuv.broid.annotation.Table";
+
+	static final String PREFERENCES = "com.iamuv.broid.annotation.Preferences";
+
+	private static final String COLUMN = "com.iamuv.broid.annotation.Column";
+
+	private static final String IGNORE = "com.iamuv.broid.annotation.Ignore";
+
+	private static final String PREFERENCES_PAIR = "com.iamuv.broid.annotation.PreferencesPair";
+
+	private static final String SQLITE_SUFFIX = "_SQLiteMapper";
+
+	private static final String PREFERENCES_SUFFIX = "_PreferencesMapper";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			final boolean table = TABLE.equals(annotation.getQualifiedName().toString());
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS)
+					continue;
+				TypeElement type = (TypeElement) element;
+				String reason = checkType(type);
+				if (reason == null) {
+					try {
+						if (table)
+							reason = generateSQLiteMapper(type);
+						else
+							reason = generatePreferencesMapper(type);
+					} catch (IOException e) {
+						reason = e.toString();
+					}
+				}
+				if (reason != null)
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "broid: use reflection for " + type + ", " + reason, type);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 映射类不能直接实例化的原因, 可以时返回null
+	 */
+	private String checkType(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT))
+			return "the class is abstract";
+		if (!type.getTypeParameters().isEmpty())
+			return "the class is generic";
+		Element e = type;
+		while (e.getKind() != ElementKind.PACKAGE) {
+			if (e.getModifiers().contains(Modifier.PRIVATE))
+				return "the class is private";
+			if (e instanceof TypeElement && ((TypeElement) e).getNestingKind() == NestingKind.MEMBER && !e.getModifiers().contains(Modifier.STATIC))
+				return "the class is an inner class";
+			e = e.getEnclosingElement();
+		}
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty())
+				return constructor.getModifiers().contains(Modifier.PRIVATE) ? "the constructor is private" : null;
+		}
+		return "can not find the constructor without parameters";
+	}
+
+	private String generateSQLiteMapper(TypeElement type) throws IOException {
+		List<Property> properties = new ArrayList<Property>();
+		String autoKey = null;
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC) || getAnnotation(field, IGNORE) != null)
+				continue;
+			Property property = new Property(field);
+			if (property.mColumnType != null) {
+				String reason = property.initAccessor(type);
+				if (reason != null)
+					return reason;
+			}
+			AnnotationMirror column = getAnnotation(field, COLUMN);
+			if (column != null) {
+				property.mDefault = getValue(column, "value");
+				if (autoKey == null && Boolean.parseBoolean(getValue(column, "isAutoKey")))
+					autoKey = property.mName;
+			}
+			properties.add(property);
+		}
+
+		final String tableName = "table_" + type.getSimpleName().toString().toLowerCase(Locale.ENGLISH);
+		StringBuilder columns = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		StringBuilder sets = new StringBuilder();
+		for (Property property : properties) {
+			if (property.mName.equals(autoKey))
+				continue;
+			columns.append(',').append(property.mName);
+			if (property.mDefault != null && property.mDefault.length() > 0)
+				values.append(",COALESCE(?,").append(property.mDefault).append(')');
+			else
+				values.append(",?");
+			if (property.mType.getKind().isPrimitive())
+				sets.append(',').append(property.mName).append("=?");
+			else
+				sets.append(',').append(property.mName).append("=COALESCE(?,").append(property.mName).append(')');
+		}
+		String insertSQL;
+		if (columns.length() > 0)
+			insertSQL = "INSERT INTO " + tableName + " (" + columns.substring(1) + ") VALUES (" + values.substring(1) + ')';
+		else
+			insertSQL = "INSERT INTO " + tableName + " DEFAULT VALUES";
+		String updateSQL = null;
+		String deleteSQL = null;
+		if (autoKey != null) {
+			if (sets.length() > 0)
+				updateSQL = "UPDATE " + tableName + " SET " + sets.substring(1) + " WHERE " + autoKey + "=?";
+			deleteSQL = "DELETE FROM " + tableName + " WHERE " + autoKey + "=?";
+		}
+
+		final String className = type.getQualifiedName().toString();
+		final String mapperName = getMapperName(type, SQLITE_SUFFIX);
+		StringBuilder s = new StringBuilder();
+		appendHeader(s, type);
+		s.append("import android.database.Cursor;\n");
+		s.append("import android.database.sqlite.SQLiteStatement;\n\n");
+		s.append("import com.iamuv.broid.storage.SQLiteMapper;\n");
+		s.append("import com.iamuv.broid.storage.SQLiteValues;\n\n");
+		s.append("public final class ").append(mapperName).append(" implements SQLiteMapper<").append(className).append("> {\n\n");
+
+		s.append("\tprivate static final String[] COLUMNS = { ");
+		for (int i = 0; i < properties.size(); i++) {
+			s.append(i > 0 ? ", " : "").append(literal(properties.get(i).mName));
+		}
+		s.append(" };\n\n");
+		appendGetter(s, "String[]", "getColumns", "COLUMNS");
+		appendGetter(s, "String", "getTableName", literal(tableName));
+		appendGetter(s, "String", "getAutoKey", literal(autoKey));
+		appendGetter(s, "String", "getInsertSQL", literal(insertSQL));
+		appendGetter(s, "String", "getUpdateSQL", literal(updateSQL));
+		appendGetter(s, "String", "getDeleteSQL", literal(deleteSQL));
+		appendGetter(s, className, "newInstance", "new " + className + "()");
+
+		s.append("\t@Override\n\tpublic int bind(SQLiteStatement statement, int index, ").append(className).append(" c, int skip) {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			s.append("\t\tif (skip != ").append(i).append(")\n");
+			s.append("\t\t\t").append(properties.get(i).bind("index++")).append('\n');
+		}
+		s.append("\t\treturn index;\n\t}\n\n");
+
+		s.append("\t@Override\n\tpublic void bindColumn(SQLiteStatement statement, int index, int column, ").append(className).append(" c) {\n");
+		s.append("\t\tswitch (column) {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			s.append("\t\tcase ").append(i).append(":\n");
+			s.append("\t\t\t").append(properties.get(i).bind("index")).append('\n');
+			s.append("\t\t\tbreak;\n");
+		}
+		s.append("\t\tdefault:\n\t\t\tstatement.bindNull(index);\n\t\t}\n\t}\n\n");
+
+		s.append("\t@Override\n\tpublic void read(Cursor cursor, int[] indexes, ").append(className).append(" c) {\n");
+		s.append("\t\tint index;\n");
+		for (int i = 0; i < properties.size(); i++) {
+			Property property = properties.get(i);
+			if (property.mColumnType == null)
+				continue;
+			s.append("\t\tindex = indexes[").append(i).append("];\n");
+			s.append("\t\tif (index != -1 && !cursor.isNull(index))\n");
+			s.append("\t\t\t").append(property.set(String.format(property.mColumnType[1], "index"))).append('\n');
+		}
+		s.append("\t}\n\n}\n");
+		write(type, mapperName, s);
+		return null;
+	}
+
+	private String generatePreferencesMapper(TypeElement type) throws IOException {
+		List<Property> properties = new ArrayList<Property>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC))
+				continue;
+			Property property = new Property(field);
+			// 与PreferencesDao一致, 只映射boolean, long, float, int, String
+			if (property.mPreferencesType == null)
+				continue;
+			String reason = property.initAccessor(type);
+			if (reason != null)
+				return reason;
+			AnnotationMirror pair = getAnnotation(field, PREFERENCES_PAIR);
+			property.mDefault = getPreferencesDefault(property.mPreferencesType, pair == null ? null : getValue(pair, "value"));
+			properties.add(property);
+		}
+
+		final String className = type.getQualifiedName().toString();
+		final String mapperName = getMapperName(type, PREFERENCES_SUFFIX);
+		StringBuilder s = new StringBuilder();
+		appendHeader(s, type);
+		s.append("import java.util.Map;\n\n");
+		s.append("import android.content.SharedPreferences.Editor;\n\n");
+		s.append("import com.iamuv.broid.storage.PreferencesMapper;\n\n");
+		s.append("public final class ").append(mapperName).append(" implements PreferencesMapper<").append(className).append("> {\n\n");
+		appendGetter(s, className, "newInstance", "new " + className + "()");
+
+		s.append("\t@Override\n\tpublic void read(Map<String, ?> values, ").append(className).append(" c) {\n");
+		if (!properties.isEmpty())
+			s.append("\t\tObject value;\n");
+		for (Property property : properties) {
+			s.append("\t\tvalue = values.get(").append(literal(property.mName)).append(");\n");
+			s.append("\t\t").append(property.set("value == null ? " + property.mDefault + " : " + String.format(property.mPreferencesType[1], "String.valueOf(value)"))).append('\n');
+		}
+		s.append("\t}\n\n");
+
+		s.append("\t@Override\n\tpublic void write(Editor editor, ").append(className).append(" c) {\n");
+		for (Property property : properties) {
+			s.append("\t\teditor.").append(property.mPreferencesType[0]).append('(').append(literal(property.mName)).append(", ");
+			if ("String".equals(property.mPreferencesType[2]))
+				s.append("String.valueOf(").append(property.mGetter).append(')');
+			else
+				s.append(property.mGetter);
+			s.append(");\n");
+		}
+		s.append("\t}\n\n}\n");
+		write(type, mapperName, s);
+		return null;
+	}
+
+	/**
+	 * 按PreferencesDao的规则计算默认值
+	 */
+	private static String getPreferencesDefault(String[] preferencesType, String value) {
+		final String type = preferencesType[2];
+		if ("String".equals(type))
+			return literal(value == null ? "" : value);
+		if ("boolean".equals(type))
+			return String.valueOf(value != null && value.length() > 0 && Boolean.parseBoolean(value));
+		try {
+			if ("long".equals(type))
+				return Long.parseLong(value) + "L";
+			if ("int".equals(type))
+				return String.valueOf(Integer.parseInt(value));
+			float f = Float.parseFloat(value);
+			if (Float.isNaN(f))
+				return "Float.NaN";
+			if (Float.isInfinite(f))
+				return f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+			return f + "f";
+		} catch (Exception e) {
+			return "0";
+		}
+	}
+
+	private String getMapperName(TypeElement type, String suffix) {
+		String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+		return name.substring(name.lastIndexOf('.') + 1) + suffix;
+	}
+
+	private String getPackageName(TypeElement type) {
+		PackageElement p = processingEnv.getElementUtils().getPackageOf(type);
+		return p.isUnnamed() ? null : p.getQualifiedName().toString();
+	}
+
+	private void appendHeader(StringBuilder s, TypeElement type) {
+		s.append("// Generated by broid-processor, do not modify\n");
+		final String packageName = getPackageName(type);
+		if (packageName != null)
+			s.append("package ").append(packageName).append(";\n\n");
+	}
+
+	private static void appendGetter(StringBuilder s, String returnType, String name, String value) {
+		s.append("\t@Override\n\tpublic ").append(returnType).append(' ').append(name).append("() {\n");
+		s.append("\t\treturn ").append(value).append(";\n\t}\n\n");
+	}
+
+	private void write(TypeElement type, String mapperName, StringBuilder s) throws IOException {
+		final String packageName = getPackageName(type);
+		Writer writer = processingEnv.getFiler().createSourceFile(packageName == null ? mapperName : packageName + '.' + mapperName, type)
+				.openWriter();
+		try {
+			writer.write(s.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static AnnotationMirror getAnnotation(Element element, String name) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (name.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString()))
+				return mirror;
+		}
+		return null;
+	}
+
+	private String getValue(AnnotationMirror mirror, String name) {
+		Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+			if (name.equals(entry.getKey().getSimpleName().toString()))
+				return String.valueOf(entry.getValue().getValue());
+		}
+		return null;
+	}
+
+	private static String literal(String value) {
+		if (value == null)
+			return "null";
+		StringBuilder s = new StringBuilder("\"");
+		final int length = value.length();
+		char c;
+		for (int i = 0; i < length; i++) {
+			c = value.charAt(i);
+			switch (c) {
+			case '"':
+				s.append("\\\"");
+				break;
+			case '\\':
+				s.append("\\\\");
+				break;
+			case '\n':
+				s.append("\\n");
+				break;
+			case '\r':
+				s.append("\\r");
+				break;
+			case '\t':
+				s.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c > 0x7e)
+					s.append(String.format("\\u%04x", (int) c));
+				else
+					s.append(c);
+			}
+		}
+		return s.append('"').toString();
+	}
+
+	/**
+	 * 映射类的一个属性
+	 */
+	private class Property {
+
+		final VariableElement mField;
+
+		final String mName;
+
+		final TypeMirror mType;
+
+		/**
+		 * 与SQLiteColumn一致, {绑定语句, 读取表达式}, 不支持的类型为null
+		 */
+		final String[] mColumnType;
+
+		/**
+		 * 与PreferencesDao一致, {Editor方法, 解析表达式, 类型}, 不支持的类型为null
+		 */
+		final String[] mPreferencesType;
+
+		String mGetter;
+
+		String mSetter;
+
+		String mDefault;
+
+		Property(VariableElement field) {
+			mField = field;
+			mName = field.getSimpleName().toString();
+			mType = field.asType();
+			mColumnType = getColumnType(mType);
+			mPreferencesType = getPreferencesType(mType);
+		}
+
+		/**
+		 * @return 无法访问属性的原因, 可以访问时返回null
+		 */
+		String initAccessor(TypeElement type) {
+			if (!mField.getModifiers().contains(Modifier.PRIVATE)) {
+				if (mField.getModifiers().contains(Modifier.FINAL))
+					return "the field " + mName + " is final";
+				mGetter = "c." + mName;
+				mSetter = "c." + mName + " = ";
+				return null;
+			}
+			final String name = Character.toUpperCase(mName.charAt(0)) + mName.substring(1);
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC))
+					continue;
+				final String methodName = method.getSimpleName().toString();
+				if (method.getParameters().isEmpty() && processingEnv.getTypeUtils().isSameType(method.getReturnType(), mType)
+						&& (methodName.equals("get" + name) || (mType.getKind() == TypeKind.BOOLEAN && methodName.equals("is" + name))))
+					mGetter = "c." + methodName + "()";
+				else if (methodName.equals("set" + name) && method.getParameters().size() == 1
+						&& processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), mType))
+					mSetter = "c." + methodName + "(";
+			}
+			if (mGetter == null || mSetter == null)
+				return "can not find the getter and setter of the private field " + mName;
+			return null;
+		}
+
+		String bind(String index) {
+			if (mColumnType == null)
+				return "statement.bindNull(" + index + ");";
+			return String.format(mColumnType[0], index, mGetter);
+		}
+
+		String set(String value) {
+			return mSetter.endsWith("(") ? mSetter + value + ");" : mSetter + value + ';';
+		}
+	}
+
+	private static String getDeclaredName(TypeMirror type) {
+		if (type.getKind() != TypeKind.DECLARED)
+			return null;
+		return String.valueOf(((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName());
+	}
+
+	private static String[] getColumnType(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+			return new String[] { "statement.bindLong(%1$s, %2$s);", "cursor.getInt(%s)" };
+		case SHORT:
+			return new String[] { "statement.bindLong(%1$s, %2$s);", "cursor.getShort(%s)" };
+		case LONG:
+			return new String[] { "statement.bindLong(%1$s, %2$s);", "cursor.getLong(%s)" };
+		case FLOAT:
+			return new String[] { "statement.bindDouble(%1$s, %2$s);", "cursor.getFloat(%s)" };
+		case DOUBLE:
+			return new String[] { "statement.bindDouble(%1$s, %2$s);", "cursor.getDouble(%s)" };
+		case BOOLEAN:
+			return new String[] { "SQLiteValues.bindBoolean(statement, %1$s, %2$s);", "SQLiteValues.readBoolean(cursor, %s)" };
+		case CHAR:
+			return new String[] { "SQLiteValues.bindChar(statement, %1$s, %2$s);", "SQLiteValues.readChar(cursor, %s)" };
+		case ARRAY:
+			if (((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE)
+				return new String[] { "SQLiteValues.bindBytes(statement, %1$s, %2$s);", "SQLiteValues.readBytes(cursor, %s)" };
+			return null;
+		default:
+			break;
+		}
+		final String name = getDeclaredName(type);
+		if ("java.lang.String".equals(name))
+			return new String[] { "SQLiteValues.bindString(statement, %1$s, %2$s);", "cursor.getString(%s)" };
+		if ("java.util.Date".equals(name))
+			return new String[] { "SQLiteValues.bindDate(statement, %1$s, %2$s);", "SQLiteValues.readDate(cursor, %s)" };
+		if ("java.lang.Integer".equals(name))
+			return new String[] { "SQLiteValues.bindInteger(statement, %1$s, %2$s);", "Integer.valueOf(cursor.getInt(%s))" };
+		if ("java.lang.Short".equals(name))
+			return new String[] { "SQLiteValues.bindShortObject(statement, %1$s, %2$s);", "Short.valueOf(cursor.getShort(%s))" };
+		if ("java.lang.Long".equals(name))
+			return new String[] { "SQLiteValues.bindLongObject(statement, %1$s, %2$s);", "Long.valueOf(cursor.getLong(%s))" };
+		if ("java.lang.Float".equals(name))
+			return new String[] { "SQLiteValues.bindFloatObject(statement, %1$s, %2$s);", "Float.valueOf(cursor.getFloat(%s))" };
+		if ("java.lang.Double".equals(name))
+			return new String[] { "SQLiteValues.bindDoubleObject(statement, %1$s, %2$s);", "Double.valueOf(cursor.getDouble(%s))" };
+		if ("java.lang.Boolean".equals(name))
+			return new String[] { "SQLiteValues.bindBooleanObject(statement, %1$s, %2$s);", "SQLiteValues.readBooleanObject(cursor, %s)" };
+		if ("java.lang.Character".equals(name))
+			return new String[] { "SQLiteValues.bindCharacter(statement, %1$s, %2$s);", "SQLiteValues.readCharacter(cursor, %s)" };
+		return null;
+	}
+
+	private static String[] getPreferencesType(TypeMirror type) {
+		switch (type.getKind()) {
+		case BOOLEAN:
+			return new String[] { "putBoolean", "Boolean.parseBoolean(%s)", "boolean" };
+		case LONG:
+			return new String[] { "putLong", "Long.parseLong(%s)", "long" };
+		case FLOAT:
+			return new String[] { "putFloat", "Float.parseFloat(%s)", "float" };
+		case INT:
+			return new String[] { "putInt", "Integer.parseInt(%s)", "int" };
+		default:
+			break;
+		}
+		if ("java.lang.String".equals(getDeclaredName(type)))
+			return new String[] { "putString", "%s", "String" };
+		return null;
+	}
+
+}
@@ -35,6 +35,7 @@ import com.iamuv.broid.http.HttpRequest;
 import com.iamuv.broid.storage.DaoFactory;
 import com.iamuv.broid.storage.PreferencesDao;
 import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteWriteBehind;
 
 /**
  * 
@@ -50,9 +51,10 @@ public class Broid {
 
 	private static Application mAppInstance;
 	private static boolean mDebugMode;
-	private static DaoFactory mDaoFactory;
+	private static final DaoFactory mDaoFactory = new DaoFactory();
 	private static HttpAsynTask mHttpAsynTask;
 	private static long mHttpTimeLimit;
+	private static long mSQLiteIdleTime;
 	private static String mPackageName;
 	private static ConcurrentHashMap<String, Integer> mRequestCodeCache;
 	private static final AtomicInteger mRequestCode = new AtomicInteger(100);
@@ -61,6 +63,18 @@ public class Broid {
 
 	private Broid() {}
 
+	/**
+	 * 初始化 并在后台线程中创建映射类的Dao
+	 * 
+	 * @param application
+	 * @param preloads
+	 *            带有Table或Preferences注解的映射类
+	 */
+	public static final void onCreate(Application application, Class<?>... preloads) {
+		onCreate(application);
+		preload(preloads);
+	}
+
 	public static final void onCreate(Application application) {
 		mAppInstance = application;
 		try {
@@ -71,11 +85,13 @@ public class Broid {
 			if (info != null && info.metaData != null) {
 				mDebugMode = info.metaData.getBoolean("Broid debug", true);
 				mHttpTimeLimit = info.metaData.getLong("Broid http time limit", 60 * 1000);
+				mSQLiteIdleTime = info.metaData.getLong("Broid sqlite idle time", 30 * 1000);
 			} else
 				throw new Exception();
 		} catch (Exception e) {
 			mDebugMode = true;
 			mHttpTimeLimit = 60 * 1000;
+			mSQLiteIdleTime = 30 * 1000;
 		}
 		if (mDebugMode)
 			android.util.Log
@@ -110,19 +126,37 @@ public class Broid {
 		return mHttpTimeLimit;
 	}
 
+	public static final long getSQLiteIdleTime() {
+		return mSQLiteIdleTime;
+	}
+
 	public static final String getPackageName() {
 		return mPackageName;
 	}
 
 	public static final <T> SQLiteDao<T> getSQLiteDao(Class<T> type) {
-		if (mDaoFactory == null)
-			mDaoFactory = new DaoFactory();
 		return mDaoFactory.getSQLiteDao(type);
 	}
 
+	/**
+	 * 在后台线程中创建映射类的Dao, 之后在主线程中的首次获取不再等待表结构检查
+	 * 
+	 * @param types
+	 *            带有Table或Preferences注解的映射类
+	 */
+	public static final void preload(Class<?>... types) {
+		mDaoFactory.preload(types);
+	}
+
+	/**
+	 * 提交所有SQLiteDao延迟写入中缓存的操作 <br>
+	 * 进程可能被回收前调用, 例如Application的onLowMemory与onTrimMemory, Activity的onStop
+	 */
+	public static final void flush() {
+		SQLiteWriteBehind.flushAll();
+	}
+
 	public static final <T> PreferencesDao<T> getPreferencesDao(Class<T> type) {
-		if (mDaoFactory == null)
-			mDaoFactory = new DaoFactory();
 		return mDaoFactory.getPreferencesDao(type);
 	}
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 索引 <br>
+ * 用于属性时为该字段的单列索引, 用于类时为value中字段的组合索引, 一个类需要多个组合索引时使用{@link Indexes}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.TYPE })
+public @interface Index {
+
+	// 组合索引的字段名 用于属性时忽略
+	public String[] value() default {};
+
+	// 索引名 为空时以字段名生成 实际的索引名以"index_表名_"开头
+	public String name() default "";
+
+	// 是否为唯一索引
+	public boolean unique() default false;
+
+}
@@ -27,5 +27,17 @@ public @interface Table {
     // 所在数据库名 默认为"database.sqlite"
     public String database() default "database.sqlite";
 
+    // 是否开启WAL日志模式 同一数据库中任一表开启即对整个数据库生效
+    public boolean writeAheadLogging() default false;
+
+    // 按自增主键缓存的实体数量 默认为0不缓存
+    public int cacheSize() default 0;
+
+    // 缓存的查询结果数量 默认为0不缓存
+    public int queryCacheSize() default 0;
+
+    // 缓存的查询结果总行数上限 超出时淘汰最久未访问的结果
+    public int queryCacheRows() default 5000;
+
 }
 
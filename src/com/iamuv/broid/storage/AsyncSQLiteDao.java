@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import android.content.ContentValues;
+
+import com.iamuv.broid.storage.SQLiteDao.UpsertResult;
+
+/**
+ * SQLiteDao的异步操作 通过{@link SQLiteDao#async()}获取 <br>
+ * <ul>
+ * <li>读操作在读线程池中并发执行, 写操作在所属数据库的写线程中按提交顺序执行</li>
+ * <li>每个方法返回{@link Future}, 也可以传入{@link SQLiteCallback}在调用线程接收结果</li>
+ * <li>多个操作需要在同一个线程中执行时使用{@link #read(Callable, SQLiteCallback)}与{@link #write(Callable, SQLiteCallback)}</li>
+ * </ul>
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class AsyncSQLiteDao<T> {
+
+	private final SQLiteDao<T> mDao;
+
+	AsyncSQLiteDao(SQLiteDao<T> dao) {
+		mDao = dao;
+	}
+
+	/**
+	 * @return 对应的同步操作
+	 */
+	public SQLiteDao<T> sync() {
+		return mDao;
+	}
+
+	/**
+	 * 在读线程池中执行自定义的读操作
+	 * 
+	 * @param callable
+	 * @param callback
+	 *            可以为null
+	 */
+	public <Result> Future<Result> read(Callable<Result> callable, SQLiteCallback<Result> callback) {
+		return SQLiteExecutor.read(callable, callback);
+	}
+
+	/**
+	 * 在所属数据库的写线程中执行自定义的写操作, 与同一数据库的其他写操作按提交顺序执行
+	 * 
+	 * @param callable
+	 * @param callback
+	 *            可以为null
+	 */
+	public <Result> Future<Result> write(Callable<Result> callable, SQLiteCallback<Result> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), callable, callback);
+	}
+
+	/**
+	 * 异步保存数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Long> save(final T c, SQLiteCallback<Long> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Long>() {
+
+			@Override
+			public Long call() throws Exception {
+				return mDao.save(c);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步批量保存数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> save(final List<T> list, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.save(list);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据条件查询数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<ArrayList<T>> get(final String selection, final Object[] selectionArgs, final String groupBy, final String having, final String orderBy,
+			final String limit, SQLiteCallback<ArrayList<T>> callback) {
+		return SQLiteExecutor.read(new Callable<ArrayList<T>>() {
+
+			@Override
+			public ArrayList<T> call() throws Exception {
+				return mDao.get(selection, selectionArgs, groupBy, having, orderBy, limit);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据条件查询数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<ArrayList<T>> get(final String selection, final Object[] selectionArgs, SQLiteCallback<ArrayList<T>> callback) {
+		return SQLiteExecutor.read(new Callable<ArrayList<T>>() {
+
+			@Override
+			public ArrayList<T> call() throws Exception {
+				return mDao.get(selection, selectionArgs);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步查询表中所有数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<ArrayList<T>> get(SQLiteCallback<ArrayList<T>> callback) {
+		return SQLiteExecutor.read(new Callable<ArrayList<T>>() {
+
+			@Override
+			public ArrayList<T> call() throws Exception {
+				return mDao.get();
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步按字段值分页查询第一页 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<SQLitePage<T>> getPage(final String selection, final Object[] selectionArgs, final String column, final boolean desc, final int size, SQLiteCallback<SQLitePage<T>> callback) {
+		return SQLiteExecutor.read(new Callable<SQLitePage<T>>() {
+
+			@Override
+			public SQLitePage<T> call() throws Exception {
+				return mDao.getPage(selection, selectionArgs, column, desc, size);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步查询下一页 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<SQLitePage<T>> getNextPage(final SQLitePage<T> page, SQLiteCallback<SQLitePage<T>> callback) {
+		return SQLiteExecutor.read(new Callable<SQLitePage<T>>() {
+
+			@Override
+			public SQLitePage<T> call() throws Exception {
+				return mDao.getNextPage(page);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据主键获取数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<T> getByKey(final int keyValue, SQLiteCallback<T> callback) {
+		return SQLiteExecutor.read(new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				return mDao.getByKey(keyValue);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据主键批量获取数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<LinkedHashMap<Long, T>> getByKeys(final long[] keyValues, SQLiteCallback<LinkedHashMap<Long, T>> callback) {
+		return SQLiteExecutor.read(new Callable<LinkedHashMap<Long, T>>() {
+
+			@Override
+			public LinkedHashMap<Long, T> call() throws Exception {
+				return mDao.getByKeys(keyValues);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据条件更新数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> upd(final ContentValues values, final String whereClause, final Object[] whereArgs, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.upd(values, whereClause, whereArgs);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据主键更新数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> updByKey(final T c, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.updByKey(c);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据主键批量更新数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> updByKeys(final List<T> list, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.updByKeys(list);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据自增主键批量插入或更新数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<UpsertResult> upsert(final List<T> list, SQLiteCallback<UpsertResult> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<UpsertResult>() {
+
+			@Override
+			public UpsertResult call() throws Exception {
+				return mDao.upsert(list);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据唯一字段批量插入或更新数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<UpsertResult> upsert(final List<T> list, final String[] columns, SQLiteCallback<UpsertResult> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<UpsertResult>() {
+
+			@Override
+			public UpsertResult call() throws Exception {
+				return mDao.upsert(list, columns);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据主键删除数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> delByKeys(final long[] keyValues, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.delByKeys(keyValues);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据RowID删除数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> delByRows(final long[] rowids, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.delByRows(rowids);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步根据条件删除数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> del(final String whereClause, final Object[] whereArgs, SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.del(whereClause, whereArgs);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 异步删除表中所有数据 参见{@link SQLiteDao}的同名方法
+	 * 
+	 * @param callback
+	 *            可以为null
+	 */
+	public Future<Integer> del(SQLiteCallback<Integer> callback) {
+		return SQLiteExecutor.write(mDao.getManager(), new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return mDao.del();
+			}
+		}, callback);
+	}
+
+}
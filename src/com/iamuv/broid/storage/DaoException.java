@@ -23,4 +23,8 @@ public class DaoException extends RuntimeException {
 	super(msg);
     }
 
+    public DaoException(String msg, Throwable cause) {
+	super(msg, cause);
+    }
+
 }
\ No newline at end of file
@@ -15,10 +15,17 @@
  */
 package com.iamuv.broid.storage;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+import com.iamuv.broid.annotation.Preferences;
+import com.iamuv.broid.annotation.Table;
+
 /**
- * 存储实体类工厂
+ * 存储实体类工厂 <br>
+ * 同一个映射类只会创建一个Dao, 多个线程同时获取时只有一个线程创建, 其他线程等待
  * 
  * @author <a href="http://www.iamuv.com" target="_blank">Uv</a> <br>
  *         <a href="mailto:uv@iamuv.com?subject=about DaoFactory.java">uv@iamuv.com</a> <br>
@@ -27,31 +34,112 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class DaoFactory {
 
-    private static ConcurrentHashMap<String, SQLiteDao<?>> SQLITE_DAO_CACHE;
-    private static ConcurrentHashMap<String, PreferencesDao<?>> PREFERENCES_DAO_CACHE;
+    private static final ConcurrentHashMap<String, SQLiteDao<?>> SQLITE_DAO_CACHE = new ConcurrentHashMap<String, SQLiteDao<?>>();
+    private static final ConcurrentHashMap<String, PreferencesDao<?>> PREFERENCES_DAO_CACHE = new ConcurrentHashMap<String, PreferencesDao<?>>();
+    private static final ConcurrentHashMap<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
 
-    public DaoFactory() {
-	SQLITE_DAO_CACHE = new ConcurrentHashMap<String, SQLiteDao<?>>();
-	PREFERENCES_DAO_CACHE = new ConcurrentHashMap<String, PreferencesDao<?>>();
-    }
+    public DaoFactory() {}
 
     @SuppressWarnings("unchecked")
     public final <T> SQLiteDao<T> getSQLiteDao(Class<T> type) {
-	SQLiteDao<T> dao = (SQLiteDao<T>) SQLITE_DAO_CACHE.get(type.getName());
+	final String name = type.getName();
+	SQLiteDao<T> dao = (SQLiteDao<T>) SQLITE_DAO_CACHE.get(name);
 	if (dao == null) {
-	    dao = new SQLiteDao<T>(type);
-	    SQLITE_DAO_CACHE.put(type.getName(), dao);
+	    synchronized (getLock(name)) {
+		dao = (SQLiteDao<T>) SQLITE_DAO_CACHE.get(name);
+		if (dao == null) {
+		    dao = new SQLiteDao<T>(type, (SQLiteMapper<T>) findMapper(type, SQLiteMapper.SUFFIX));
+		    SQLITE_DAO_CACHE.put(name, dao);
+		}
+	    }
 	}
 	return dao;
     }
 
     @SuppressWarnings("unchecked")
     public final <T> PreferencesDao<T> getPreferencesDao(Class<T> type) {
-	PreferencesDao<T> dao = (PreferencesDao<T>) PREFERENCES_DAO_CACHE.get(type);
+	final String name = type.getName();
+	PreferencesDao<T> dao = (PreferencesDao<T>) PREFERENCES_DAO_CACHE.get(name);
 	if (dao == null) {
-	    dao = new PreferencesDao<T>(type);
-	    PREFERENCES_DAO_CACHE.put(type.getName(), dao);
+	    synchronized (getLock(name)) {
+		dao = (PreferencesDao<T>) PREFERENCES_DAO_CACHE.get(name);
+		if (dao == null) {
+		    dao = new PreferencesDao<T>(type, (PreferencesMapper<T>) findMapper(type, PreferencesMapper.SUFFIX));
+		    PREFERENCES_DAO_CACHE.put(name, dao);
+		}
+	    }
 	}
 	return dao;
     }
+
+    /**
+     * 在后台线程中创建Dao, 使之后的首次获取不再检查表结构 <br>
+     * SQLiteDao在所属数据库的写线程中创建, 同一数据库的表依次创建, 不同数据库并行创建, 不占用读线程 <br>
+     * PreferencesDao在单独的后台线程中创建
+     * 
+     * @param types
+     *            带有{@link Table}或{@link Preferences}注解的映射类
+     */
+    public final void preload(Class<?>... types) {
+	for (final Class<?> type : types) {
+	    final Table table = type.getAnnotation(Table.class);
+	    if (table != null) {
+		SQLiteExecutor.write(SQLiteDatabaseManager.get(table.database()), new Callable<Object>() {
+
+		    @Override
+		    public Object call() throws Exception {
+			try {
+			    return getSQLiteDao(type);
+			} catch (Exception e) {
+			    Log.w(Broid.TAG, "preload " + type.getName() + " failed", e);
+			    return null;
+			}
+		    }
+		}, null);
+	    } else if (type.getAnnotation(Preferences.class) != null) {
+		SQLiteExecutor.background(new Callable<Object>() {
+
+		    @Override
+		    public Object call() throws Exception {
+			try {
+			    return getPreferencesDao(type);
+			} catch (Exception e) {
+			    Log.w(Broid.TAG, "preload " + type.getName() + " failed", e);
+			    return null;
+			}
+		    }
+		}, null);
+	    } else
+		Log.w(Broid.TAG, "can not preload the class " + type.getName() + " without the annotation 'Table' or 'Preferences'", null);
+	}
+    }
+
+    private static Object getLock(String name) {
+	Object lock = LOCKS.get(name);
+	if (lock == null) {
+	    Object created = new Object();
+	    lock = LOCKS.putIfAbsent(name, created);
+	    if (lock == null)
+		lock = created;
+	}
+	return lock;
+    }
+
+    /**
+     * 查找broid-processor在编译期生成的映射
+     * 
+     * @param type
+     * @param suffix
+     * @return 不存在时返回null, 使用反射映射
+     */
+    private static Object findMapper(Class<?> type, String suffix) {
+	try {
+	    return Class.forName(type.getName() + suffix, true, type.getClassLoader()).newInstance();
+	} catch (ClassNotFoundException e) {
+	    return null;
+	} catch (Exception e) {
+	    Log.w(Broid.TAG, "can not create the mapper of " + type.getName(), e);
+	    return null;
+	}
+    }
 }
@@ -53,13 +53,26 @@ public class PreferencesDao<T> {
 
 	private final int mSize;
 
+	private final PreferencesMapper<T> mMapper;
+
 	private static final Object LOCK = new Object();
 
 	public PreferencesDao(Class<T> cla) {
+		this(cla, null);
+	}
+
+	/**
+	 * @param cla
+	 * @param mapper
+	 *            编译期生成的映射, 为null时使用反射映射
+	 */
+	public PreferencesDao(Class<T> cla, PreferencesMapper<T> mapper) {
 		mType = cla;
-		initFields();
+		mMapper = mapper;
+		if (mapper == null)
+			initFields();
 		mSize = mFields.size();
-		if (mSize == 0) {
+		if (mSize == 0 && mapper == null) {
 			Log.w(Broid.TAG, "can not find any fields in the class " + mType.getSimpleName(), null);
 		}
 		mPreferences = mType.getAnnotation(Preferences.class);
@@ -95,6 +108,11 @@ public class PreferencesDao<T> {
 
 	public final T get() {
 		synchronized (LOCK) {
+			if (mMapper != null) {
+				T t = mMapper.newInstance();
+				mMapper.read(mSharedPreferences.getAll(), t);
+				return t;
+			}
 			T t = null;
 			try {
 				t = mType.newInstance();
@@ -171,22 +189,26 @@ public class PreferencesDao<T> {
 	public final void save(T c) {
 		synchronized (LOCK) {
 			Editor editor = mSharedPreferences.edit();
-			for (int i = 0; i < mSize; i++) {
-				try {
-					mFields.get(i).setAccessible(true);
-					if (boolean.class == mFields.get(i).getType()) {
-						editor.putBoolean(mFields.get(i).getName(), mFields.get(i).getBoolean(c));
-					} else if (long.class == mFields.get(i).getType()) {
-						editor.putLong(mFields.get(i).getName(), mFields.get(i).getLong(c));
-					} else if (float.class == mFields.get(i).getType()) {
-						editor.putFloat(mFields.get(i).getName(), mFields.get(i).getFloat(c));
-					} else if (int.class == mFields.get(i).getType()) {
-						editor.putInt(mFields.get(i).getName(), mFields.get(i).getInt(c));
-					} else if (String.class == mFields.get(i).getType()) {
-						editor.putString(mFields.get(i).getName(), String.valueOf(mFields.get(i).get(c)));
+			if (mMapper != null) {
+				mMapper.write(editor, c);
+			} else {
+				for (int i = 0; i < mSize; i++) {
+					try {
+						mFields.get(i).setAccessible(true);
+						if (boolean.class == mFields.get(i).getType()) {
+							editor.putBoolean(mFields.get(i).getName(), mFields.get(i).getBoolean(c));
+						} else if (long.class == mFields.get(i).getType()) {
+							editor.putLong(mFields.get(i).getName(), mFields.get(i).getLong(c));
+						} else if (float.class == mFields.get(i).getType()) {
+							editor.putFloat(mFields.get(i).getName(), mFields.get(i).getFloat(c));
+						} else if (int.class == mFields.get(i).getType()) {
+							editor.putInt(mFields.get(i).getName(), mFields.get(i).getInt(c));
+						} else if (String.class == mFields.get(i).getType()) {
+							editor.putString(mFields.get(i).getName(), String.valueOf(mFields.get(i).get(c)));
+						}
+					} catch (IllegalAccessException e) {
+						Log.w(Broid.TAG, null, e);
 					}
-				} catch (IllegalAccessException e) {
-					Log.w(Broid.TAG, null, e);
 				}
 			}
 			editor.commit();
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.Map;
+
+import android.content.SharedPreferences.Editor;
+
+/**
+ * SharedPreferences映射类与键值之间的映射 <br>
+ * 由broid-processor在编译期为每个{@link com.iamuv.broid.annotation.Preferences}类生成, 类名为映射类的类名加{@link #SUFFIX} <br>
+ * 找不到生成的映射时PreferencesDao使用反射映射
+ *
+ * @param <T>
+ */
+public interface PreferencesMapper<T> {
+
+	public static final String SUFFIX = "_PreferencesMapper";
+
+	public T newInstance();
+
+	/**
+	 * 读取所有键值, 不存在的键使用{@link com.iamuv.broid.annotation.PreferencesPair}的默认值
+	 */
+	public void read(Map<String, ?> values, T t);
+
+	public void write(Editor editor, T t);
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+
+/**
+ * 基于反射的映射, 没有编译期生成的映射时使用
+ *
+ * @param <T>
+ */
+final class ReflectSQLiteMapper<T> implements SQLiteMapper<T> {
+
+	private final Class<T> mType;
+
+	private final SQLiteColumn[] mColumns;
+
+	private final String[] mNames;
+
+	private final String mAutoKey;
+
+	ReflectSQLiteMapper(Class<T> type, SQLiteColumn[] columns, String autoKey) {
+		mType = type;
+		mColumns = columns;
+		mNames = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			mNames[i] = columns[i].mName;
+		}
+		mAutoKey = autoKey;
+	}
+
+	@Override
+	public String[] getColumns() {
+		return mNames;
+	}
+
+	@Override
+	public String getTableName() {
+		return null;
+	}
+
+	@Override
+	public String getAutoKey() {
+		return mAutoKey;
+	}
+
+	@Override
+	public String getInsertSQL() {
+		return null;
+	}
+
+	@Override
+	public String getUpdateSQL() {
+		return null;
+	}
+
+	@Override
+	public String getDeleteSQL() {
+		return null;
+	}
+
+	@Override
+	public T newInstance() {
+		try {
+			return mType.newInstance();
+		} catch (Exception e) {
+			throw new DaoException("can not create an instance of " + mType.getName(), e);
+		}
+	}
+
+	@Override
+	public int bind(SQLiteStatement statement, int index, T c, int skip) {
+		final int length = mColumns.length;
+		for (int i = 0; i < length; i++) {
+			if (i != skip)
+				bindColumn(statement, index++, i, c);
+		}
+		return index;
+	}
+
+	@Override
+	public void bindColumn(SQLiteStatement statement, int index, int column, T c) {
+		try {
+			mColumns[column].bind(statement, index, c);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, "get " + mNames[column] + " value throw exception", e);
+			statement.bindNull(index);
+		}
+	}
+
+	@Override
+	public void read(Cursor cursor, int[] indexes, T c) {
+		final int length = mColumns.length;
+		int index;
+		for (int i = 0; i < length; i++) {
+			index = indexes[i];
+			if (index == -1 || cursor.isNull(index))
+				continue;
+			try {
+				mColumns[i].read(cursor, index, c);
+			} catch (Exception e) {
+				Log.w(Broid.TAG, "set " + mNames[i] + " value throw exception", e);
+			}
+		}
+	}
+
+}
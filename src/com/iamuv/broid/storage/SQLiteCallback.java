@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+
+/**
+ * 异步数据库操作回调 此类的回调方法与初始化方法为同一线程 <br>
+ * 初始化线程没有Looper时在执行操作的线程回调
+ *
+ * @param <Result>
+ */
+public abstract class SQLiteCallback<Result> {
+
+	private final Handler mHandler;
+
+	public SQLiteCallback() {
+		mHandler = currentHandler();
+	}
+
+	protected abstract void onComplete(Result result);
+
+	protected void onError(Throwable tr) {}
+
+	protected void onCancel() {}
+
+	final void complete(final Result result) {
+		post(new Runnable() {
+
+			@Override
+			public void run() {
+				onComplete(result);
+			}
+		});
+	}
+
+	final void error(final Throwable tr) {
+		post(new Runnable() {
+
+			@Override
+			public void run() {
+				onError(tr);
+			}
+		});
+	}
+
+	final void cancel() {
+		post(new Runnable() {
+
+			@Override
+			public void run() {
+				onCancel();
+			}
+		});
+	}
+
+	private void post(Runnable runnable) {
+		if (mHandler != null)
+			mHandler.post(runnable);
+		else {
+			try {
+				runnable.run();
+			} catch (Exception e) {
+				Log.w(Broid.TAG, null, e);
+			}
+		}
+	}
+
+	static Handler currentHandler() {
+		try {
+			Looper loop = Looper.myLooper();
+			return loop == null ? null : new Handler(loop);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+}
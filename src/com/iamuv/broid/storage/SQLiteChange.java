@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+
+/**
+ * 观察的查询结果的一次变化 <br>
+ * 以ROWID标识每一行, 表中存在自增主键时即为主键
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class SQLiteChange<T> {
+
+	final ArrayList<T> mItems;
+
+	final ArrayList<Long> mInserted = new ArrayList<Long>();
+
+	final ArrayList<Long> mUpdated = new ArrayList<Long>();
+
+	final ArrayList<Long> mRemoved = new ArrayList<Long>();
+
+	SQLiteChange(ArrayList<T> items) {
+		mItems = items;
+	}
+
+	/**
+	 * @return 变化后的完整查询结果
+	 */
+	public ArrayList<T> getItems() {
+		return mItems;
+	}
+
+	/**
+	 * @return 新出现在结果中的行 首次查询时为所有行
+	 */
+	public ArrayList<Long> getInserted() {
+		return mInserted;
+	}
+
+	/**
+	 * @return 字段值发生变化的行
+	 */
+	public ArrayList<Long> getUpdated() {
+		return mUpdated;
+	}
+
+	/**
+	 * @return 不再出现在结果中的行
+	 */
+	public ArrayList<Long> getRemoved() {
+		return mRemoved;
+	}
+
+	public boolean isEmpty() {
+		return mInserted.isEmpty() && mUpdated.isEmpty() && mRemoved.isEmpty();
+	}
+
+}
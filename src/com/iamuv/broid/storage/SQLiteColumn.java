@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+
+/**
+ * 表字段与实体类属性的映射 <br>
+ * 在SQLiteDao创建时按属性类型生成一次, 读写数据时不再逐行判断类型, 基本类型不经过装箱 <br>
+ * 存储格式见{@link SQLiteValues}
+ */
+abstract class SQLiteColumn {
+
+	final Field mField;
+
+	final String mName;
+
+	SQLiteColumn(Field field) {
+		mField = field;
+		mName = field.getName();
+	}
+
+	/**
+	 * 建表时的字段类型
+	 */
+	String getSQLType() {
+		return "TEXT";
+	}
+
+	/**
+	 * 将属性值绑定到预编译语句
+	 */
+	abstract void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException;
+
+	/**
+	 * 从cursor读取值并设置到属性, 调用前已确认该字段不为null
+	 */
+	abstract void read(Cursor cursor, int index, Object c) throws IllegalAccessException;
+
+	/**
+	 * 根据属性类型生成对应的映射
+	 *
+	 * @param field
+	 * @return 不支持的类型返回{@link UnknownColumn}
+	 */
+	static SQLiteColumn create(Field field) {
+		final Class<?> type = field.getType();
+		if (int.class == type)
+			return new IntColumn(field);
+		if (short.class == type)
+			return new ShortColumn(field);
+		if (long.class == type)
+			return new LongColumn(field);
+		if (float.class == type)
+			return new FloatColumn(field);
+		if (double.class == type)
+			return new DoubleColumn(field);
+		if (boolean.class == type)
+			return new BooleanColumn(field);
+		if (char.class == type)
+			return new CharColumn(field);
+		if (byte[].class == type)
+			return new BytesColumn(field);
+		if (String.class == type)
+			return new StringColumn(field);
+		if (Date.class == type)
+			return new DateColumn(field);
+		if (Integer.class == type)
+			return new IntegerObjectColumn(field);
+		if (Short.class == type)
+			return new ShortObjectColumn(field);
+		if (Long.class == type)
+			return new LongObjectColumn(field);
+		if (Float.class == type)
+			return new FloatObjectColumn(field);
+		if (Double.class == type)
+			return new DoubleObjectColumn(field);
+		if (Boolean.class == type)
+			return new BooleanObjectColumn(field);
+		if (Character.class == type)
+			return new CharacterObjectColumn(field);
+		Log.w(Broid.TAG, "can't read the type'" + type + "' , and the column type will be TEXT", null);
+		return new UnknownColumn(field);
+	}
+
+	static final class IntColumn extends SQLiteColumn {
+
+		IntColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			statement.bindLong(index, mField.getInt(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setInt(c, cursor.getInt(index));
+		}
+	}
+
+	static final class ShortColumn extends SQLiteColumn {
+
+		ShortColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			statement.bindLong(index, mField.getShort(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setShort(c, cursor.getShort(index));
+		}
+	}
+
+	static final class LongColumn extends SQLiteColumn {
+
+		LongColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			statement.bindLong(index, mField.getLong(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setLong(c, cursor.getLong(index));
+		}
+	}
+
+	static final class FloatColumn extends SQLiteColumn {
+
+		FloatColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "REAL";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			statement.bindDouble(index, mField.getFloat(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setFloat(c, cursor.getFloat(index));
+		}
+	}
+
+	static final class DoubleColumn extends SQLiteColumn {
+
+		DoubleColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "REAL";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			statement.bindDouble(index, mField.getDouble(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setDouble(c, cursor.getDouble(index));
+		}
+	}
+
+	static final class BooleanColumn extends SQLiteColumn {
+
+		BooleanColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindBoolean(statement, index, mField.getBoolean(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setBoolean(c, SQLiteValues.readBoolean(cursor, index));
+		}
+	}
+
+	static final class CharColumn extends SQLiteColumn {
+
+		CharColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindChar(statement, index, mField.getChar(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.setChar(c, SQLiteValues.readChar(cursor, index));
+		}
+	}
+
+	static final class BytesColumn extends SQLiteColumn {
+
+		BytesColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "BLOB";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindBytes(statement, index, (byte[]) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, SQLiteValues.readBytes(cursor, index));
+		}
+	}
+
+	static final class StringColumn extends SQLiteColumn {
+
+		StringColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindString(statement, index, (String) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, cursor.getString(index));
+		}
+	}
+
+	static final class DateColumn extends SQLiteColumn {
+
+		DateColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindDate(statement, index, (Date) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, SQLiteValues.readDate(cursor, index));
+		}
+	}
+
+	static final class IntegerObjectColumn extends SQLiteColumn {
+
+		IntegerObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindInteger(statement, index, (Integer) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, Integer.valueOf(cursor.getInt(index)));
+		}
+	}
+
+	static final class ShortObjectColumn extends SQLiteColumn {
+
+		ShortObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindShortObject(statement, index, (Short) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, Short.valueOf(cursor.getShort(index)));
+		}
+	}
+
+	static final class LongObjectColumn extends SQLiteColumn {
+
+		LongObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindLongObject(statement, index, (Long) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, Long.valueOf(cursor.getLong(index)));
+		}
+	}
+
+	static final class FloatObjectColumn extends SQLiteColumn {
+
+		FloatObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "REAL";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindFloatObject(statement, index, (Float) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, Float.valueOf(cursor.getFloat(index)));
+		}
+	}
+
+	static final class DoubleObjectColumn extends SQLiteColumn {
+
+		DoubleObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "REAL";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindDoubleObject(statement, index, (Double) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, Double.valueOf(cursor.getDouble(index)));
+		}
+	}
+
+	static final class BooleanObjectColumn extends SQLiteColumn {
+
+		BooleanObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		String getSQLType() {
+			return "INTEGER";
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindBooleanObject(statement, index, (Boolean) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, SQLiteValues.readBooleanObject(cursor, index));
+		}
+	}
+
+	static final class CharacterObjectColumn extends SQLiteColumn {
+
+		CharacterObjectColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) throws IllegalAccessException {
+			SQLiteValues.bindCharacter(statement, index, (Character) mField.get(c));
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) throws IllegalAccessException {
+			mField.set(c, SQLiteValues.readCharacter(cursor, index));
+		}
+	}
+
+	static final class UnknownColumn extends SQLiteColumn {
+
+		UnknownColumn(Field field) {
+			super(field);
+		}
+
+		@Override
+		void bind(SQLiteStatement statement, int index, Object c) {
+			statement.bindNull(index);
+		}
+
+		@Override
+		void read(Cursor cursor, int index, Object c) {}
+	}
+
+}
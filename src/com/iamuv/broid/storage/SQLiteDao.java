@@ -15,24 +15,51 @@
  */
 package com.iamuv.broid.storage;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.JSONWriter;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
 import com.iamuv.broid.Broid;
 import com.iamuv.broid.Log;
 import com.iamuv.broid.annotation.Column;
 import com.iamuv.broid.annotation.Ignore;
+import com.iamuv.broid.annotation.Index;
+import com.iamuv.broid.annotation.Indexes;
 import com.iamuv.broid.annotation.Table;
 import com.iamuv.broid.utils.HexUtils;
 
@@ -40,13 +67,23 @@ import com.iamuv.broid.utils.HexUtils;
  * SQLite存储 <br>
  * <ul>
  * <li>自动创建表</li>
- * <li>自动升级表，只限增加字段</li>
+ * <li>表结构验证通过后记录映射的指纹, 指纹不变时创建SQLiteDao不再检查表结构</li>
+ * <li>自动升级表，只限增加字段, 字段类型与映射不一致时重建表</li>
+ * <li>按{@link Index}与{@link Indexes}自动创建, 修改与删除索引</li>
  * <li>支持数据类型如下:<br>
  * int, float, double, long, short, boolean, char<br>
  * Interger, Float, Double, Long, Short, Boolean<br>
  * Character, Date, String, byte[]</li>
  * <li>封装类型支持null</li>
- * <li>byte[]将以16进制方式存入数据库</li>
+ * <li>byte[]以BLOB方式存入数据库, 之前以16进制字符串存储的数据在创建时分批转换</li>
+ * <li>可以通过{@link Table#cacheSize()}按自增主键缓存实体, 缓存的实体为共享实例, 不应直接修改</li>
+ * <li>可以通过{@link Table#queryCacheSize()}缓存查询结果, 每次写操作后之前的结果失效</li>
+ * <li>可以通过{@link #observe(String, Object[], String, SQLiteObserver)}观察查询结果的变化</li>
+ * <li>查询时可以只读取部分字段, 或以只包含部分字段的投影类读取</li>
+ * <li>count, exists, min, max, sum, avg与分组计数直接以SQL聚合查询, 不创建实体</li>
+ * <li>可以通过{@link #select()}按字段构造查询, 条件值按类型绑定</li>
+ * <li>可以从JSON数组流式导入数据, 或将查询结果流式导出为JSON数组, 内存占用与数据量无关</li>
+ * <li>可以在线备份整个数据库的一致快照</li>
  * </ul>
  * 
  * @author <a href="http://www.iamuv.com" target="_blank">Uv</a> <br>
@@ -58,77 +95,263 @@ import com.iamuv.broid.utils.HexUtils;
  */
 public class SQLiteDao<T> {
 
-	static volatile int mVersion;
-
 	Class<T> mType;
 
-	private SQLiteHelper mSqLiteHelper;
-
-	private SQLiteDatabase mDatabase;
+	private final SQLiteDatabaseManager mManager;
 
 	String mTableName;
 
 	ArrayList<Field> mFields = new ArrayList<Field>();
 
-	ArrayList<Field> mAlterFields;
+	SQLiteColumn[] mColumns;
 
-	private static final Object LOCK = new Object();
-
-	private Cursor mCursor;
+	ArrayList<SQLiteColumn> mAlterFields;
 
 	Field mAutoKeyField;
 
-	Table mTable;
+	private int mAutoKeyIndex = -1;
 
-	Column mColumn;
+	private SQLiteMapper<T> mMapper;
 
-	Ignore mIgnore;
+	Table mTable;
 
 	final int mSize;
 
+	private String mInsertSQL;
+
+	private String mUpdateSQL;
+
+	private String mDeleteSQL;
+
+	private String mUpsertSQL;
+
+	private volatile AsyncSQLiteDao<T> mAsync;
+
+	private volatile SQLiteWriteBehind<T> mWriteBehind;
+
+	private final SQLiteEntityCache<T> mCache = new SQLiteEntityCache<T>(0);
+
+	private final SQLiteQueryCache<T> mQueryCache = new SQLiteQueryCache<T>();
+
+	/**
+	 * 表版本号 每次写操作结束后增加
+	 */
+	private final AtomicLong mTableVersion = new AtomicLong();
+
+	private final CopyOnWriteArrayList<SQLiteObserver<T>> mObservers = new CopyOnWriteArrayList<SQLiteObserver<T>>();
+
+	private final ConcurrentHashMap<Class<?>, SQLiteMapper<?>> mProjections = new ConcurrentHashMap<Class<?>, SQLiteMapper<?>>();
+
+	private static final String CHANGES_SQL = "SELECT changes()";
+
+	/**
+	 * 表结构维护逻辑的版本 维护逻辑改变时增加, 使所有表重新检查
+	 */
+	private static final String SCHEMA_VERSION = "1";
+
+	private static final String ROWID = "ROWID";
+
+	private static final String ROWID_ALIAS = "broid_rowid";
+
+	private static final String[] PAGE_COLUMNS = new String[] { "*", ROWID + " AS " + ROWID_ALIAS };
+
+	/**
+	 * 按主键批量操作时每条语句绑定的主键数量 只使用这几种长度, 使语句可以被缓存重用 <br>
+	 * 不超过SQLite默认的参数数量上限999
+	 */
+	private static final int[] CHUNK_SIZES = { 512, 64, 8, 1 };
+
+	/**
+	 * 16进制字符串转换为BLOB时每个事务处理的行数
+	 */
+	private static final int BLOB_BATCH_SIZE = 500;
+
+	/**
+	 * 从JSON导入时每个事务处理的行数
+	 */
+	private static final int IMPORT_BATCH_SIZE = 500;
+
 	public SQLiteDao(Class<T> cla) {
+		this(cla, null);
+	}
+
+	/**
+	 * @param cla
+	 * @param mapper
+	 *            编译期生成的映射, 为null或与映射类的属性不一致时使用反射映射
+	 */
+	public SQLiteDao(Class<T> cla, SQLiteMapper<T> mapper) {
 		mType = cla;
 		initFields();
+		if (mapper != null && !sortFields(mapper.getColumns())) {
+			Log.w(Broid.TAG, "the mapper of " + mType.getName() + " do not match the fields, use reflection instead", null);
+			mapper = null;
+		}
 		mSize = mFields.size();
+		mColumns = new SQLiteColumn[mSize];
+		for (int i = 0; i < mSize; i++) {
+			mColumns[i] = SQLiteColumn.create(mFields.get(i));
+		}
 		if (mSize == 0) {
 			Log.w(Broid.TAG, "can not find any fields in the class " + mType.getSimpleName(), null);
 		}
 		mTable = mType.getAnnotation(Table.class);
 		if (mTable != null) {
-			synchronized (LOCK) {
-				mVersion = getVersion(mTable.database());
-				mTableName = "table_" + mType.getSimpleName().toLowerCase(Locale.getDefault());
-				mSqLiteHelper = new SQLiteHelper();
-				if (existTable()) {
-					Log.d("the table " + mTableName + " exist");
-					mAlterFields = getAlterFields(getTableFields(mTableName));
-					if (mAlterFields != null) {
-						Log.d("the table " + mTableName + " need to alter");
-						setVersion(mTable.database(), ++mVersion);
-						mSqLiteHelper = new SQLiteHelper();
-					} else
-						return;
-				} else {
-					Log.d("the table " + mTableName + " do not exist");
-					setVersion(mTable.database(), ++mVersion);
-					mSqLiteHelper = new SQLiteHelper();
-				}
-				try {
-					mDatabase = mSqLiteHelper.getWritableDatabase();
-				} finally {
-					mDatabase.close();
-				}
+			mManager = SQLiteDatabaseManager.get(mTable.database());
+			if (mTable.writeAheadLogging())
+				mManager.enableWriteAheadLogging();
+			// 与broid-processor生成的表名一致, 不受系统语言影响
+			mTableName = "table_" + mType.getSimpleName().toLowerCase(Locale.ENGLISH);
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				renameLegacyTable(database);
+				final String fingerprint = getFingerprint();
+				final String[] schema = fingerprint == null ? null : mManager.getSchema(database, mTableName);
+				if (schema != null && fingerprint.equals(schema[0])) {
+					Log.d("the table " + mTableName + " is up to date");
+					mAutoKeyField = null;
+					for (int i = 0; i < mSize && schema[1] != null; i++) {
+						if (mFields.get(i).getName().equals(schema[1]))
+							mAutoKeyField = mFields.get(i);
+					}
+				} else if (checkTable(database) && fingerprint != null)
+					mManager.putSchema(database, mTableName, fingerprint, mAutoKeyField == null ? null : mAutoKeyField.getName());
+			} finally {
+				mManager.endWrite();
 			}
+			initStatements(mapper);
+			if (mAutoKeyField != null)
+				mCache.setMaxSize(mTable.cacheSize());
+			mQueryCache.setMaxSize(mTable.queryCacheSize(), mTable.queryCacheRows());
 		} else
 			throw new DaoException("can not find the class with the annotation 'Table'");
 	}
 
-	private int getVersion(String databaseName) {
-		return Broid.getConfig().getInt(databaseName + "_version", 1);
+	/**
+	 * 检查表结构 建表, 增加字段, 转换BLOB, 重建表与同步索引
+	 * 
+	 * @param database
+	 * @return 表结构与映射一致时返回true
+	 */
+	private boolean checkTable(SQLiteDatabase database) {
+		SQLiteHelper helper = new SQLiteHelper();
+		boolean result = true;
+		if (existTable(database, mTableName)) {
+			Log.d("the table " + mTableName + " exist");
+			HashMap<String, String> tableFields = getTableFields(database, mTableName);
+			if (tableFields == null)
+				return false;
+			mAlterFields = getAlterFields(tableFields);
+			if (mAlterFields != null) {
+				Log.d("the table " + mTableName + " need to alter");
+				helper.onUpgrade(database);
+			}
+			convertToBlob(database, tableFields);
+			if (needRebuild(tableFields)) {
+				Log.d("the table " + mTableName + " need to rebuild");
+				result = helper.onRebuild(database, tableFields);
+			}
+		} else {
+			Log.d("the table " + mTableName + " do not exist");
+			helper.onCreate(database);
+		}
+		return syncIndexes(database) && result;
+	}
+
+	/**
+	 * 映射的指纹 包含表名, 字段名, 字段类型, {@link Column}与索引声明
+	 * 
+	 * @return 16进制的MD5 无法计算时返回null, 每次都检查表结构
+	 */
+	private String getFingerprint() {
+		StringBuilder s = new StringBuilder(SCHEMA_VERSION).append('|').append(mTableName);
+		Column column;
+		for (int i = 0; i < mSize; i++) {
+			s.append('|').append(mColumns[i].mName).append(' ').append(mColumns[i].getSQLType());
+			column = mFields.get(i).getAnnotation(Column.class);
+			if (column != null)
+				s.append(' ').append(column.isAutoKey()).append(' ').append(column.value());
+		}
+		for (String sql : getDeclaredIndexes().values()) {
+			s.append('|').append(sql);
+		}
+		try {
+			return HexUtils.bytesToHexString(MessageDigest.getInstance("MD5").digest(s.toString().getBytes("UTF-8")));
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return null;
+		}
+	}
+
+	/**
+	 * 生成insert, update, delete语句 <br>
+	 * 保持与ContentValues相同的语义: 封装类型为null时insert使用字段默认值, update不修改该字段
+	 * 
+	 * @param mapper
+	 *            编译期生成的映射, 表名与主键一致时直接使用其预先生成的语句
+	 */
+	private void initStatements(SQLiteMapper<T> mapper) {
+		for (int i = 0; i < mSize; i++) {
+			if (mFields.get(i) == mAutoKeyField)
+				mAutoKeyIndex = i;
+		}
+		final String autoKey = mAutoKeyField == null ? null : mAutoKeyField.getName();
+		if (mapper == null) {
+			mMapper = new ReflectSQLiteMapper<T>(mType, mColumns, autoKey);
+		} else {
+			mMapper = mapper;
+			// 已存在的旧表的主键可能与编译期不一致
+			if (mapper.getInsertSQL() != null && mTableName.equals(mapper.getTableName()) && TextUtils.equals(autoKey, mapper.getAutoKey())) {
+				mInsertSQL = mapper.getInsertSQL();
+				mUpdateSQL = mapper.getUpdateSQL();
+				mDeleteSQL = mapper.getDeleteSQL();
+				return;
+			}
+		}
+		StringBuilder columns = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		StringBuilder sets = new StringBuilder();
+		for (int i = 0; i < mSize; i++) {
+			if (i == mAutoKeyIndex)
+				continue;
+			appendValue(columns, values, i);
+			appendSet(sets, i);
+		}
+		if (columns.length() > 0)
+			mInsertSQL = new StringBuilder("INSERT INTO ").append(mTableName).append(" (").append(columns.substring(1)).append(") VALUES (")
+					.append(values.substring(1)).append(')').toString();
+		else
+			mInsertSQL = "INSERT INTO " + mTableName + " DEFAULT VALUES";
+		if (mAutoKeyField != null) {
+			if (sets.length() > 0)
+				mUpdateSQL = new StringBuilder("UPDATE ").append(mTableName).append(" SET ").append(sets.substring(1)).append(" WHERE ")
+						.append(mAutoKeyField.getName()).append("=?").toString();
+			mDeleteSQL = new StringBuilder("DELETE FROM ").append(mTableName).append(" WHERE ").append(mAutoKeyField.getName()).append("=?")
+					.toString();
+		}
+	}
+
+	/**
+	 * insert语句的字段与值, 有默认值的字段为null时使用默认值
+	 */
+	private void appendValue(StringBuilder columns, StringBuilder values, int i) {
+		columns.append(',').append(mColumns[i].mName);
+		Column column = mFields.get(i).getAnnotation(Column.class);
+		if (column != null && !TextUtils.isEmpty(column.value()))
+			values.append(",COALESCE(?,").append(column.value()).append(')');
+		else
+			values.append(",?");
 	}
 
-	private void setVersion(String databaseName, int version) {
-		Broid.getConfig().edit().putInt(databaseName + "_version", version).commit();
+	/**
+	 * update语句的字段, 封装类型为null时不修改该字段
+	 */
+	private void appendSet(StringBuilder sets, int i) {
+		final String name = mColumns[i].mName;
+		if (mFields.get(i).getType().isPrimitive())
+			sets.append(',').append(name).append("=?");
+		else
+			sets.append(',').append(name).append("=COALESCE(?,").append(name).append(')');
 	}
 
 	private void initFields() {
@@ -137,20 +360,44 @@ public class SQLiteDao<T> {
 		for (int i = 0; i < length; i++) {
 			if (Modifier.isStatic(fields[i].getModifiers()))
 				continue;
-			mIgnore = fields[i].getAnnotation(Ignore.class);
-			if (mIgnore != null)
+			if (fields[i].getAnnotation(Ignore.class) != null)
 				continue;
 			fields[i].setAccessible(true);
 			mFields.add(fields[i]);
 		}
 	}
 
-	private ArrayList<Field> getAlterFields(HashMap<String, Integer> tableFields) {
+	/**
+	 * 按编译期生成的映射的字段顺序重新排列属性
+	 * 
+	 * @param columns
+	 * @return 字段与属性不一致时返回false
+	 */
+	private boolean sortFields(String[] columns) {
+		final int length = columns.length;
+		if (length != mFields.size())
+			return false;
+		ArrayList<Field> fields = new ArrayList<Field>(length);
+		for (int i = 0; i < length; i++) {
+			for (int j = 0; j < length; j++) {
+				if (mFields.get(j).getName().equals(columns[i])) {
+					fields.add(mFields.get(j));
+					break;
+				}
+			}
+			if (fields.size() != i + 1)
+				return false;
+		}
+		mFields = fields;
+		return true;
+	}
+
+	private ArrayList<SQLiteColumn> getAlterFields(HashMap<String, String> tableFields) {
 		if (mFields.size() > tableFields.size()) {
-			ArrayList<Field> results = new ArrayList<Field>();
+			ArrayList<SQLiteColumn> results = new ArrayList<SQLiteColumn>();
 			for (int i = 0; i < mSize; i++) {
 				if (tableFields.get(mFields.get(i).getName()) == null) {
-					results.add(mFields.get(i));
+					results.add(mColumns[i]);
 				}
 			}
 			return results.size() > 0 ? results : null;
@@ -159,185 +406,350 @@ public class SQLiteDao<T> {
 
 	}
 
-	private HashMap<String, Integer> getTableFields(String tableName) {
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getReadableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					mCursor = mDatabase.rawQuery("PRAGMA table_info(" + tableName + ')', null);
-					if (mCursor != null && mCursor.getColumnCount() > 0) {
-						HashMap<String, Integer> results = new HashMap<String, Integer>(mCursor.getColumnCount());
-						while (mCursor.moveToNext()) {
-							String name = mCursor.getString(mCursor.getColumnIndex("name"));
-							results.put(name, mCursor.getPosition());
-							if (mCursor.getInt(mCursor.getColumnIndex("pk")) == 1) {
-								for (int i = 0; i < mSize; i++) {
-									if (mFields.get(i).getName().equals(name)) {
-										mAutoKeyField = mFields.get(i);
-									}
-								}
+	/**
+	 * @param database
+	 * @param tableName
+	 * @return 表中的字段名与声明的类型
+	 */
+	private HashMap<String, String> getTableFields(SQLiteDatabase database, String tableName) {
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("PRAGMA table_info(" + tableName + ')', null);
+			if (cursor != null && cursor.getColumnCount() > 0) {
+				HashMap<String, String> results = new HashMap<String, String>(cursor.getColumnCount());
+				while (cursor.moveToNext()) {
+					String name = cursor.getString(cursor.getColumnIndex("name"));
+					results.put(name, cursor.getString(cursor.getColumnIndex("type")));
+					if (cursor.getInt(cursor.getColumnIndex("pk")) == 1) {
+						for (int i = 0; i < mSize; i++) {
+							if (mFields.get(i).getName().equals(name)) {
+								mAutoKeyField = mFields.get(i);
 							}
 						}
-						return results;
 					}
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					Log.w(Broid.TAG, null, e);
-				} finally {
-					closeCursor();
-					endTransaction();
 				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
+				return results;
 			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		} finally {
+			closeCursor(cursor);
 		}
 		return null;
 	}
 
-	private boolean existTable() {
-		try {
-			mSqLiteHelper = new SQLiteHelper();
-			mDatabase = mSqLiteHelper.getReadableDatabase();
+	/**
+	 * 将声明类型不是BLOB的byte[]字段中以16进制字符串存储的数据转换为BLOB <br>
+	 * 分批进行, 每批一个事务, 中断后下次创建时继续转换
+	 * 
+	 * @param database
+	 * @param tableFields
+	 */
+	private void convertToBlob(SQLiteDatabase database, HashMap<String, String> tableFields) {
+		if (tableFields == null)
+			return;
+		String name;
+		for (int i = 0; i < mSize; i++) {
+			name = mColumns[i].mName;
+			if (!(mColumns[i] instanceof SQLiteColumn.BytesColumn) || !tableFields.containsKey(name) || "BLOB".equalsIgnoreCase(tableFields.get(name)))
+				continue;
+			final String select = "SELECT ROWID, " + name + " FROM " + mTableName + " WHERE typeof(" + name + ")='text' LIMIT " + BLOB_BATCH_SIZE;
+			SQLiteStatement statement = database.compileStatement("UPDATE " + mTableName + " SET " + name + "=? WHERE ROWID=?");
 			try {
-				mDatabase.beginTransaction();
-				mCursor = mDatabase.rawQuery("SELECT * FROM SQLITE_MASTER WHERE NAME = ?", buildSelectionArgs(mTableName));
-				if (mCursor != null && mCursor.moveToNext()) {
-					return true;
-				}
-				mDatabase.setTransactionSuccessful();
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
+				int count;
+				do {
+					count = 0;
+					Cursor cursor = null;
+					database.beginTransaction();
+					try {
+						cursor = database.rawQuery(select, null);
+						byte[] value;
+						while (cursor.moveToNext()) {
+							value = HexUtils.hexStringToBytes(cursor.getString(1));
+							if (value == null)
+								statement.bindNull(1);
+							else
+								statement.bindBlob(1, value);
+							statement.bindLong(2, cursor.getLong(0));
+							statement.execute();
+							count++;
+						}
+						database.setTransactionSuccessful();
+					} finally {
+						closeCursor(cursor);
+						endTransaction(database);
+					}
+					if (count > 0)
+						Log.d(Broid.TAG, "convert " + count + " rows of " + mTableName + '.' + name + " to BLOB", null);
+				} while (count == BLOB_BATCH_SIZE);
 			} finally {
-				closeCursor();
-				endTransaction();
+				statement.close();
+			}
+		}
+	}
+
+	/**
+	 * @param tableFields
+	 * @return 已存在字段声明的类型与映射不一致时返回true
+	 */
+	private boolean needRebuild(HashMap<String, String> tableFields) {
+		if (tableFields == null)
+			return false;
+		String type;
+		for (int i = 0; i < mSize; i++) {
+			type = tableFields.get(mColumns[i].mName);
+			if (type != null && !type.equalsIgnoreCase(mFields.get(i) == mAutoKeyField ? "INTEGER" : mColumns[i].getSQLType()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 按{@link Index}与{@link Indexes}创建索引, 删除已不再声明或定义已改变的索引 <br>
+	 * 只处理以"index_表名_"开头的索引, 其他索引不受影响
+	 * 
+	 * @param database
+	 */
+	private boolean syncIndexes(SQLiteDatabase database) {
+		final LinkedHashMap<String, String> declared = getDeclaredIndexes();
+		final String prefix = "index_" + mTableName + '_';
+		HashMap<String, String> exists = new HashMap<String, String>();
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("SELECT name, sql FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+					new String[] { mTableName });
+			while (cursor.moveToNext()) {
+				if (cursor.getString(0).startsWith(prefix))
+					exists.put(cursor.getString(0), cursor.getString(1));
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return false;
+		} finally {
+			closeCursor(cursor);
+		}
+		boolean result = true;
+		for (Map.Entry<String, String> entry : exists.entrySet()) {
+			if (!entry.getValue().equals(declared.get(entry.getKey()))) {
+				Log.d(Broid.TAG, "drop the index " + entry.getKey(), null);
+				database.execSQL("DROP INDEX " + entry.getKey());
+			}
+		}
+		for (Map.Entry<String, String> entry : declared.entrySet()) {
+			if (entry.getValue().equals(exists.get(entry.getKey())))
+				continue;
+			try {
+				Log.d(Broid.TAG, "add a new index, create sql is\r\n" + entry.getValue(), null);
+				database.execSQL(entry.getValue());
+			} catch (SQLException e) {
+				// 如唯一索引的字段已存在重复数据
+				Log.w(Broid.TAG, "create the index " + entry.getKey() + " failed", e);
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return 声明的索引名与建索引语句
+	 */
+	private LinkedHashMap<String, String> getDeclaredIndexes() {
+		LinkedHashMap<String, String> results = new LinkedHashMap<String, String>();
+		Index index;
+		for (int i = 0; i < mSize; i++) {
+			index = mFields.get(i).getAnnotation(Index.class);
+			if (index != null)
+				addIndex(results, index, new String[] { mColumns[i].mName });
+		}
+		index = mType.getAnnotation(Index.class);
+		if (index != null)
+			addIndex(results, index, index.value());
+		Indexes indexes = mType.getAnnotation(Indexes.class);
+		if (indexes != null) {
+			final Index[] values = indexes.value();
+			for (int i = 0; i < values.length; i++) {
+				addIndex(results, values[i], values[i].value());
+			}
+		}
+		return results;
+	}
+
+	private void addIndex(HashMap<String, String> results, Index index, String[] columns) {
+		if (columns.length == 0) {
+			Log.w(Broid.TAG, "the index of " + mTableName + " do not have any columns", null);
+			return;
+		}
+		StringBuilder names = new StringBuilder();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			boolean exist = false;
+			for (int j = 0; j < mSize; j++) {
+				if (mColumns[j].mName.equals(columns[i]))
+					exist = true;
+			}
+			if (!exist) {
+				Log.w(Broid.TAG, "table " + mTableName + " do not have the column " + columns[i] + ", ignore the index", null);
+				return;
+			}
+			names.append('_').append(columns[i]);
+			s.append(',').append(columns[i]);
+		}
+		final String name = "index_" + mTableName + (TextUtils.isEmpty(index.name()) ? names.toString() : '_' + index.name());
+		results.put(name, new StringBuilder("CREATE ").append(index.unique() ? "UNIQUE " : "").append("INDEX ").append(name).append(" ON ")
+				.append(mTableName).append(" (").append(s.substring(1)).append(')').toString());
+	}
+
+	/**
+	 * 旧版本按系统语言转换表名的大小写, 在土耳其语等环境下与英文规则不同 <br>
+	 * 只存在旧表名时改为新表名, 并删除以旧表名命名的索引, 之后由{@link #syncIndexes(SQLiteDatabase)}重建
+	 */
+	private void renameLegacyTable(SQLiteDatabase database) {
+		final String legacy = "table_" + mType.getSimpleName().toLowerCase(Locale.getDefault());
+		if (legacy.equals(mTableName) || !existTable(database, legacy) || existTable(database, mTableName))
+			return;
+		final String prefix = "index_" + legacy + '_';
+		ArrayList<String> indexes = new ArrayList<String>();
+		Cursor cursor = null;
+		database.beginTransaction();
+		try {
+			cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+					new String[] { legacy });
+			while (cursor.moveToNext()) {
+				if (cursor.getString(0).startsWith(prefix))
+					indexes.add(cursor.getString(0));
+			}
+			closeCursor(cursor);
+			Log.d(Broid.TAG, "rename the table " + legacy + " to " + mTableName, null);
+			database.execSQL("ALTER TABLE \"" + legacy + "\" RENAME TO " + mTableName);
+			final int size = indexes.size();
+			for (int i = 0; i < size; i++) {
+				database.execSQL("DROP INDEX \"" + indexes.get(i) + '"');
+			}
+			database.setTransactionSuccessful();
+		} catch (SQLException e) {
+			Log.w(Broid.TAG, "rename the table " + legacy + " failed", e);
+		} finally {
+			closeCursor(cursor);
+			database.endTransaction();
+		}
+	}
+
+	private boolean existTable(SQLiteDatabase database, String tableName) {
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("SELECT * FROM SQLITE_MASTER WHERE NAME = ?", buildSelectionArgs(tableName));
+			if (cursor != null && cursor.moveToNext()) {
+				return true;
 			}
 		} catch (Exception e) {
 			Log.w(Broid.TAG, null, e);
 		} finally {
-			mDatabase.close();
+			closeCursor(cursor);
 		}
 		return false;
 	}
 
-	private void endTransaction() {
-		if (mDatabase.inTransaction())
-			mDatabase.endTransaction();
+	private static void endTransaction(SQLiteDatabase database) {
+		if (database.inTransaction())
+			database.endTransaction();
 	}
 
-	private void closeCursor() {
-		if (mCursor != null && !mCursor.isClosed())
-			mCursor.close();
+	private static void closeCursor(Cursor cursor) {
+		if (cursor != null && !cursor.isClosed())
+			cursor.close();
 	}
 
-	private ContentValues toValue(T c) {
-		ContentValues values = new ContentValues();
+	/**
+	 * 查询开始时解析一次各属性对应的cursor字段位置
+	 * 
+	 * @param cursor
+	 * @return 与mColumns一一对应, 不存在的字段为-1
+	 */
+	private int[] getColumnIndexes(Cursor cursor) {
+		int[] indexes = new int[mSize];
 		for (int i = 0; i < mSize; i++) {
-			mIgnore = mFields.get(i).getAnnotation(Ignore.class);
-			if (mIgnore != null)
-				continue;
-			try {
-				if (int.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), Integer.valueOf(mFields.get(i).getInt(c)));
-				} else if (byte[].class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), HexUtils.bytesToHexString((byte[]) mFields.get(i).get(c)));
-				} else if (String.class == mFields.get(i).getType()) {
-					if (mFields.get(i).get(c) != null)
-						values.put(mFields.get(i).getName(), String.valueOf(mFields.get(i).get(c)));
-				} else if (char.class == mFields.get(i).getType() || Character.class.isAssignableFrom(mFields.get(i).getType())) {
-					if (mFields.get(i).get(c) != null)
-						values.put(mFields.get(i).getName(), String.valueOf(mFields.get(i).get(c)));
-				} else if (short.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), mFields.get(i).getShort(c));
-				} else if (long.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), mFields.get(i).getLong(c));
-				} else if (float.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), mFields.get(i).getFloat(c));
-				} else if (double.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), mFields.get(i).getDouble(c));
-				} else if (boolean.class == mFields.get(i).getType()) {
-					values.put(mFields.get(i).getName(), mFields.get(i).getBoolean(c));
-				} else if (Date.class == mFields.get(i).getType()) {
-					if (mFields.get(i).get(c) != null)
-						values.put(mFields.get(i).getName(), ((Date) mFields.get(i).get(c)).getTime());
-				} else if (Integer.class.isAssignableFrom(mFields.get(i).getType())
-						|| Short.class.isAssignableFrom(mFields.get(i).getType()) || Long.class.isAssignableFrom(mFields.get(i).getType())
-						|| Float.class.isAssignableFrom(mFields.get(i).getType())
-						|| Double.class.isAssignableFrom(mFields.get(i).getType())
-						|| Boolean.class.isAssignableFrom(mFields.get(i).getType())) {
-					if (mFields.get(i).get(c) != null)
-						values.put(mFields.get(i).getName(), String.valueOf(mFields.get(i).get(c)));
-				} else {
-					Log.w(Broid.TAG, "can't read the type'" + mFields.get(i).getType() + "' , and value will be null", null);
-					values.putNull(mFields.get(i).getName());
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, "get " + mFields.get(i).getName() + " value throw exception", e);
+			indexes[i] = cursor.getColumnIndex(mColumns[i].mName);
+		}
+		return indexes;
+	}
+
+	private static int[] getColumnIndexes(Cursor cursor, String[] columns) {
+		final int length = columns.length;
+		int[] indexes = new int[length];
+		for (int i = 0; i < length; i++) {
+			indexes[i] = cursor.getColumnIndex(columns[i]);
+		}
+		return indexes;
+	}
+
+	/**
+	 * @param columns
+	 * @return 所有字段都存在于表中时返回true
+	 */
+	boolean checkColumns(String[] columns) {
+		for (int i = 0; i < columns.length; i++) {
+			boolean exist = false;
+			for (int j = 0; j < mSize && !exist; j++) {
+				exist = mColumns[j].mName.equals(columns[i]);
+			}
+			if (!exist) {
+				Log.w(Broid.TAG, "table " + mTableName + " do not have the column " + columns[i], null);
+				return false;
 			}
 		}
-		return values;
+		return true;
 	}
 
-	private void toField(Cursor cursor, T c) {
-		for (int i = 0; i < mSize; i++) {
-			try {
-				mFields.get(i).setAccessible(true);
-				int index = cursor.getColumnIndex(mFields.get(i).getName());
-				if (index != -1 && mCursor.getString(index) != null) {
-					if (int.class == mFields.get(i).getType()) {
-						mFields.get(i).setInt(c, mCursor.getInt(index));
-					} else if (byte[].class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, HexUtils.hexStringToBytes(mCursor.getString(index)));
-					} else if (String.class == mFields.get(i).getType()) {
-						mFields.get(i).set(c, mCursor.getString(index));
-					} else if (short.class == mFields.get(i).getType()) {
-						mFields.get(i).setShort(c, cursor.getShort(index));
-					} else if (long.class == mFields.get(i).getType()) {
-						mFields.get(i).setLong(c, cursor.getLong(index));
-					} else if (float.class == mFields.get(i).getType()) {
-						mFields.get(i).setFloat(c, cursor.getFloat(index));
-					} else if (double.class == mFields.get(i).getType()) {
-						mFields.get(i).setDouble(c, cursor.getDouble(index));
-					} else if (boolean.class == mFields.get(i).getType()) {
-						mFields.get(i).setBoolean(c, Boolean.getBoolean(cursor.getString(index)));
-					} else if (Date.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, new Date(cursor.getLong(index)));
-					} else if (char.class == mFields.get(i).getType()) {
-						if (cursor.getString(index).length() > 0) {
-							mFields.get(i).setChar(c, cursor.getString(index).charAt(0));
-						} else
-							mFields.get(i).setChar(c, (char) 0);
-					} else if (Integer.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Integer.valueOf(mCursor.getInt(index)));
-					} else if (Short.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Short.valueOf(cursor.getString(index)));
-					} else if (Long.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Long.valueOf(cursor.getString(index)));
-					} else if (Float.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Float.valueOf(cursor.getString(index)));
-					} else if (Double.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Double.valueOf(cursor.getString(index)));
-					} else if (Boolean.class.isAssignableFrom(mFields.get(i).getType())) {
-						mFields.get(i).set(c, Boolean.valueOf(cursor.getString(index)));
-					} else if (Character.class.isAssignableFrom(mFields.get(i).getType())) {
-						if (cursor.getString(index).length() > 0) {
-							mFields.get(i).set(c, Character.valueOf((cursor.getString(index).charAt(0))));
-						} else
-							mFields.get(i).set(c, Character.valueOf((char) 0));
-					} else {
-						Log.w(Broid.TAG, "can't read the type'" + mFields.get(i).getType() + "' , and value will be null", null);
+	/**
+	 * 获取投影类的映射 投影类中与表字段同名的属性才会被读取
+	 */
+	@SuppressWarnings("unchecked")
+	private <P> SQLiteMapper<P> getProjection(Class<P> projection) {
+		SQLiteMapper<P> mapper = (SQLiteMapper<P>) mProjections.get(projection);
+		if (mapper == null) {
+			ArrayList<SQLiteColumn> columns = new ArrayList<SQLiteColumn>();
+			Field[] fields = projection.getDeclaredFields();
+			for (int i = 0; i < fields.length; i++) {
+				if (Modifier.isStatic(fields[i].getModifiers()) || fields[i].getAnnotation(Ignore.class) != null)
+					continue;
+				for (int j = 0; j < mSize; j++) {
+					if (mColumns[j].mName.equals(fields[i].getName())) {
+						fields[i].setAccessible(true);
+						columns.add(SQLiteColumn.create(fields[i]));
+						break;
 					}
 				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, "set " + mFields.get(i).getName() + " value throw exception", e);
 			}
+			if (columns.isEmpty())
+				Log.w(Broid.TAG, "can not find any columns of " + mTableName + " in the class " + projection.getSimpleName(), null);
+			mapper = new ReflectSQLiteMapper<P>(projection, columns.toArray(new SQLiteColumn[columns.size()]), null);
+			mProjections.put(projection, mapper);
 		}
+		return mapper;
+	}
 
+	/**
+	 * 将实体类的值按insert, update语句的字段顺序绑定到预编译语句
+	 * 
+	 * @param statement
+	 * @param c
+	 * @param withKey
+	 *            是否在最后绑定主键
+	 */
+	private void bindStatement(SQLiteStatement statement, T c, boolean withKey) {
+		final int index = mMapper.bind(statement, 1, c, mAutoKeyIndex);
+		if (withKey)
+			mMapper.bindColumn(statement, index, mAutoKeyIndex, c);
 	}
 
+	private int executeUpdateDelete(SQLiteDatabase database, SQLiteStatement statement) {
+		statement.execute();
+		return (int) mManager.compileStatement(database, CHANGES_SQL).simpleQueryForLong();
+	}
+
+	/**
+	 * 查询接口只接受字符串参数, byte[]与null先以空字符串占位, 再由{@link BlobCursorFactory}以BLOB或NULL绑定
+	 */
 	private String[] buildSelectionArgs(Object... args) {
 		String[] selectionArgs = null;
 		if (args != null) {
@@ -345,8 +757,8 @@ public class SQLiteDao<T> {
 			if (length > 0) {
 				selectionArgs = new String[length];
 				for (int i = 0; i < length; i++) {
-					if (byte[].class.isAssignableFrom(args[i].getClass())) {
-						selectionArgs[i] = HexUtils.bytesToHexString((byte[]) args[i]);
+					if (args[i] instanceof byte[] || args[i] == null) {
+						selectionArgs[i] = "";
 					} else {
 						selectionArgs[i] = String.valueOf(args[i]);
 					}
@@ -356,90 +768,204 @@ public class SQLiteDao<T> {
 		return selectionArgs;
 	}
 
+	/**
+	 * 按从大到小的顺序取不超过剩余数量的最大长度, 例如65个主键分为64与1 <br>
+	 * 只有剩余数量小于次小的长度时才补齐, 避免逐个执行
+	 * 
+	 * @param remaining
+	 *            剩余的主键数量
+	 * @return 下一段的长度, 超过剩余数量时以最后一个主键补齐
+	 */
+	private static int getChunkSize(int remaining) {
+		final int last = CHUNK_SIZES.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (remaining >= CHUNK_SIZES[i])
+				return CHUNK_SIZES[i];
+		}
+		return remaining > CHUNK_SIZES[last] ? CHUNK_SIZES[last - 1] : CHUNK_SIZES[last];
+	}
+
+	private static String buildIn(String column, int size) {
+		StringBuilder s = new StringBuilder(column).append(" IN (");
+		for (int i = 0; i < size; i++) {
+			s.append(i > 0 ? ",?" : "?");
+		}
+		return s.append(')').toString();
+	}
+
+	private static void bindKeys(SQLiteProgram program, long[] keys, int offset, int size) {
+		final int last = keys.length - 1;
+		for (int i = 0; i < size; i++) {
+			program.bindLong(i + 1, keys[Math.min(offset + i, last)]);
+		}
+	}
+
+	private static String[] buildKeyArgs(long[] keys, int offset, int size) {
+		final int last = keys.length - 1;
+		String[] args = new String[size];
+		for (int i = 0; i < size; i++) {
+			args[i] = String.valueOf(keys[Math.min(offset + i, last)]);
+		}
+		return args;
+	}
+
+	private Cursor query(SQLiteDatabase database, String[] columns, String selection, Object[] selectionArgs, String groupBy, String having,
+			String orderBy, String limit) {
+		return database.queryWithFactory(BlobCursorFactory.create(selectionArgs), false, mTableName, columns, selection,
+				buildSelectionArgs(selectionArgs), groupBy, having, orderBy, limit);
+	}
+
+	/**
+	 * 绑定条件值 byte[]以BLOB绑定, 其他值与查询一样以字符串绑定
+	 */
+	private static void bindArgs(SQLiteProgram program, int index, Object[] args) {
+		if (args == null)
+			return;
+		final int length = args.length;
+		for (int i = 0; i < length; i++) {
+			if (args[i] == null)
+				program.bindNull(index + i);
+			else if (args[i] instanceof byte[])
+				program.bindBlob(index + i, (byte[]) args[i]);
+			else
+				program.bindString(index + i, String.valueOf(args[i]));
+		}
+	}
+
+	/**
+	 * 按类型绑定ContentValues中的值, 与SQLiteDatabase.update一致
+	 */
+	private static void bindValue(SQLiteProgram program, int index, Object value) {
+		if (value == null)
+			program.bindNull(index);
+		else if (value instanceof byte[])
+			program.bindBlob(index, (byte[]) value);
+		else if (value instanceof Double || value instanceof Float)
+			program.bindDouble(index, ((Number) value).doubleValue());
+		else if (value instanceof Number)
+			program.bindLong(index, ((Number) value).longValue());
+		else if (value instanceof Boolean)
+			program.bindLong(index, ((Boolean) value) ? 1 : 0);
+		else if (value instanceof Date)
+			program.bindLong(index, ((Date) value).getTime());
+		else
+			program.bindString(index, value.toString());
+	}
+
 	private String buildSelection(String... selections) {
 		StringBuilder selectionString = new StringBuilder();
 		if (selections != null) {
 			final int length = selections.length;
 			for (int i = 0; i < length; i++) {
-				selectionString.append(" AND ");
+				if (i > 0)
+					selectionString.append(" AND ");
 				selectionString.append(selections[i]);
 				selectionString.append("=?");
 			}
 		}
-		return selectionString.substring(5);
+		return selectionString.toString();
 	}
 
 	/**
-	 * insert单条数据
+	 * 获取异步操作 读操作与写操作分别在独立的线程池中执行, 结果通过Future或调用线程的回调返回
 	 * 
-	 * @param c
-	 *            数据实体类
-	 * @return insert的数据在表中的rowid, 若insert失败则返回-1
+	 * @return 同一个SQLiteDao总是返回同一个实例
 	 */
-	public long save(T c) {
-		long rowid = -1;
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					ContentValues values = toValue(c);
-					if (mAutoKeyField != null)
-						values.remove(mAutoKeyField.getName());
-					rowid = mDatabase.insert(mTableName, null, values);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
+	public AsyncSQLiteDao<T> async() {
+		AsyncSQLiteDao<T> async = mAsync;
+		if (async == null) {
+			synchronized (this) {
+				async = mAsync;
+				if (async == null)
+					mAsync = async = new AsyncSQLiteDao<T>(this);
 			}
 		}
-		return rowid;
+		return async;
 	}
 
 	/**
-	 * insert多条数据
+	 * 获取延迟合并写入 适用于高频写入的小数据 <br>
+	 * 操作缓存在内存中, 达到数量上限或延迟时间后在一次事务中提交
 	 * 
-	 * @param list
-	 *            数据实体类list
-	 * @return insert数据的数量 此返回值不会低于0
+	 * @return 同一个SQLiteDao总是返回同一个实例
 	 */
-	public int save(List<T> list) {
-		int result = 0;
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					ContentValues values;
-					final int size = list.size();
-					for (int i = 0; i < size; i++) {
-						values = toValue(list.get(i));
-						if (mAutoKeyField != null)
-							values.remove(mAutoKeyField.getName());
-						if (mDatabase.insert(mTableName, null, values) != -1) {
+	public SQLiteWriteBehind<T> writeBehind() {
+		SQLiteWriteBehind<T> writeBehind = mWriteBehind;
+		if (writeBehind == null) {
+			synchronized (this) {
+				writeBehind = mWriteBehind;
+				if (writeBehind == null)
+					mWriteBehind = writeBehind = new SQLiteWriteBehind<T>(this);
+			}
+		}
+		return writeBehind;
+	}
+
+	final SQLiteDatabaseManager getManager() {
+		return mManager;
+	}
+
+	/**
+	 * insert单条数据
+	 * 
+	 * @param c
+	 *            数据实体类
+	 * @return insert的数据在表中的rowid, 若insert失败则返回-1
+	 */
+	public long save(T c) {
+		long rowid = -1;
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				SQLiteStatement statement = mManager.compileStatement(database, mInsertSQL);
+				bindStatement(statement, c, false);
+				rowid = statement.executeInsert();
+				database.setTransactionSuccessful();
+			} finally {
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		onModified();
+		return rowid;
+	}
+
+	/**
+	 * insert多条数据
+	 * 
+	 * @param list
+	 *            数据实体类list
+	 * @return insert数据的数量 此返回值不会低于0
+	 */
+	public int save(List<T> list) {
+		int result = 0;
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				SQLiteStatement statement = mManager.compileStatement(database, mInsertSQL);
+				final int size = list.size();
+				for (int i = 0; i < size; i++) {
+					bindStatement(statement, list.get(i), false);
+					try {
+						if (statement.executeInsert() != -1)
 							result++;
-						}
+					} catch (SQLException e) {
+						Log.w(Broid.TAG, null, e);
 					}
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
 				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
+				database.setTransactionSuccessful();
 			} finally {
-				mDatabase.close();
+				endTransaction(database);
+				mManager.endWrite();
 			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
 		}
+		onModified();
 		return result;
 	}
 
@@ -457,292 +983,1488 @@ public class SQLiteDao<T> {
 	 * @return 数据list
 	 */
 	public ArrayList<T> get(String selection, Object[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
-		ArrayList<T> results = new ArrayList<T>();
-		synchronized (LOCK) {
+		if (!mQueryCache.isEnabled())
+			return load(selection, selectionArgs, groupBy, having, orderBy, limit);
+		final String key = buildQueryKey(selection, selectionArgs, groupBy, having, orderBy, limit);
+		final long version = mTableVersion.get();
+		ArrayList<T> results = mQueryCache.get(key, version);
+		if (results != null)
+			return new ArrayList<T>(results);
+		try {
+			results = query(selection, selectionArgs, groupBy, having, orderBy, limit);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return new ArrayList<T>();
+		}
+		mQueryCache.put(key, new ArrayList<T>(results), version);
+		return results;
+	}
+
+	private ArrayList<T> load(String selection, Object[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+		try {
+			return query(selection, selectionArgs, groupBy, having, orderBy, limit);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return new ArrayList<T>();
+		}
+	}
+
+	private ArrayList<T> query(String selection, Object[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+		return query(mMapper, null, selection, selectionArgs, groupBy, having, orderBy, limit);
+	}
+
+	/**
+	 * @param mapper
+	 * @param columns
+	 *            读取的字段 为null时读取所有字段
+	 */
+	private <P> ArrayList<P> query(SQLiteMapper<P> mapper, String[] columns, String selection, Object[] selectionArgs, String groupBy,
+			String having, String orderBy, String limit) {
+		ArrayList<P> results = new ArrayList<P>();
+		SQLiteDatabase database = mManager.beginRead();
+		Cursor cursor = null;
+		try {
+			cursor = query(database, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+			final int[] indexes = getColumnIndexes(cursor, mapper.getColumns());
+			P result;
+			while (cursor.moveToNext()) {
+				result = mapper.newInstance();
+				mapper.read(cursor, indexes, result);
+				results.add(result);
+			}
+		} finally {
+			closeCursor(cursor);
+			mManager.endRead(database);
+		}
+		return results;
+	}
+
+	/**
+	 * 查询结果缓存的key 各部分以\0分隔, byte[]参数以16进制字符串表示, null与字符串"null"区分
+	 */
+	private static String buildQueryKey(String selection, Object[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+		StringBuilder key = new StringBuilder();
+		key.append(selection == null ? "" : selection.trim()).append('\0');
+		if (selectionArgs != null) {
+			for (int i = 0; i < selectionArgs.length; i++) {
+				if (selectionArgs[i] instanceof byte[])
+					key.append('b').append(HexUtils.bytesToHexString((byte[]) selectionArgs[i]));
+				else if (selectionArgs[i] == null)
+					key.append('n');
+				else
+					key.append('s').append(String.valueOf(selectionArgs[i]));
+				key.append('\0');
+			}
+		}
+		key.append('\0').append(groupBy == null ? "" : groupBy.trim());
+		key.append('\0').append(having == null ? "" : having.trim());
+		key.append('\0').append(orderBy == null ? "" : orderBy.trim());
+		key.append('\0').append(limit == null ? "" : limit.trim());
+		return key.toString();
+	}
+
+	/**
+	 * 根据条件获取数据 只读取指定的字段, 其余属性保持映射类中的初始值 <br>
+	 * 不使用查询结果缓存
+	 * 
+	 * @param columns
+	 *            读取的字段 为null时读取所有字段
+	 * @param selection
+	 * @param selectionArgs
+	 * @param groupBy
+	 * @param having
+	 * @param orderBy
+	 * @param limit
+	 * @return 数据list 字段不存在时返回空的结果
+	 */
+	public ArrayList<T> get(String[] columns, String selection, Object[] selectionArgs, String groupBy, String having, String orderBy,
+			String limit) {
+		if (columns == null)
+			return get(selection, selectionArgs, groupBy, having, orderBy, limit);
+		if (!checkColumns(columns))
+			return new ArrayList<T>();
+		try {
+			return query(mMapper, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return new ArrayList<T>();
+		}
+	}
+
+	/**
+	 * 根据条件获取数据 只读取指定的字段
+	 * 
+	 * @param columns
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 数据list
+	 */
+	public ArrayList<T> get(String[] columns, String selection, Object[] selectionArgs) {
+		return get(columns, selection, selectionArgs, null, null, null, null);
+	}
+
+	/**
+	 * 根据条件获取数据 以投影类读取, 只读取投影类中与表字段同名的属性 <br>
+	 * 投影类需要无参构造方法, 不使用查询结果缓存
+	 * 
+	 * @param projection
+	 *            投影类
+	 * @param selection
+	 * @param selectionArgs
+	 * @param groupBy
+	 * @param having
+	 * @param orderBy
+	 * @param limit
+	 * @return 投影类list
+	 */
+	public <P> ArrayList<P> get(Class<P> projection, String selection, Object[] selectionArgs, String groupBy, String having,
+			String orderBy, String limit) {
+		try {
+			SQLiteMapper<P> mapper = getProjection(projection);
+			return query(mapper, mapper.getColumns(), selection, selectionArgs, groupBy, having, orderBy, limit);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return new ArrayList<P>();
+		}
+	}
+
+	/**
+	 * 根据条件获取数据 以投影类读取
+	 * 
+	 * @param projection
+	 *            投影类
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 投影类list
+	 */
+	public <P> ArrayList<P> get(Class<P> projection, String selection, Object[] selectionArgs) {
+		return get(projection, selection, selectionArgs, null, null, null, null);
+	}
+
+	/**
+	 * 根据条件获取数据
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 数据list
+	 */
+	public ArrayList<T> get(String selection, Object[] selectionArgs) {
+		return get(selection, selectionArgs, null, null, null, null);
+	}
+
+	/**
+	 * 获取所有数据
+	 * 
+	 * @return 数据list
+	 */
+	public ArrayList<T> get() {
+		return get(null, null, null, null, null, null);
+	}
+
+	/**
+	 * 根据条件逐行读取数据, 不一次性加载所有数据 <br>
+	 * 使用完毕必须调用{@link SQLiteIterator#close()}, 打开期间当前线程不能对同一数据库进行写操作
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @param groupBy
+	 * @param having
+	 * @param orderBy
+	 * @param limit
+	 * @param reuse
+	 *            是否复用同一个实例, 复用时值为null的字段会保留上一行的值
+	 * @return 查询失败时返回空结果
+	 */
+	public SQLiteIterator<T> iterate(String selection, Object[] selectionArgs, String groupBy, String having, String orderBy, String limit,
+			boolean reuse) {
+		SQLiteDatabase database = null;
+		Cursor cursor = null;
+		try {
+			database = mManager.beginIterate();
+			cursor = query(database, null, selection, selectionArgs, groupBy, having, orderBy, limit);
+			return new SQLiteIterator<T>(mManager, database, cursor, mMapper, getColumnIndexes(cursor), reuse);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			if (database != null) {
+				closeCursor(cursor);
+				mManager.endIterate(database, Thread.currentThread());
+			}
+		}
+		return new SQLiteIterator<T>(mManager, null, null, mMapper, null, false);
+	}
+
+	/**
+	 * 根据条件逐行读取数据
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @return
+	 */
+	public SQLiteIterator<T> iterate(String selection, Object[] selectionArgs) {
+		return iterate(selection, selectionArgs, null, null, null, null, false);
+	}
+
+	/**
+	 * 逐行读取所有数据
+	 * 
+	 * @return
+	 */
+	public SQLiteIterator<T> iterate() {
+		return iterate(null, null, null, null, null, null, false);
+	}
+
+	/**
+	 * 按字段值分页获取第一页数据 <br>
+	 * 下一页从本页最后一行之后开始查询, 不使用OFFSET, 分页字段应建有索引且不为null
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @param column
+	 *            分页字段, 可以为ROWID
+	 * @param desc
+	 *            是否倒序
+	 * @param size
+	 *            每页数量
+	 * @return 字段不存在时返回空的一页
+	 */
+	public SQLitePage<T> getPage(String selection, Object[] selectionArgs, String column, boolean desc, int size) {
+		boolean tieBreak = true;
+		if (ROWID.equalsIgnoreCase(column) || (mAutoKeyField != null && mAutoKeyField.getName().equals(column))) {
+			tieBreak = false;
+		} else {
+			boolean exist = false;
+			for (int i = 0; i < mSize; i++) {
+				if (mColumns[i].mName.equals(column))
+					exist = true;
+			}
+			if (!exist) {
+				Log.w(Broid.TAG, "table " + mTableName + " do not have the column " + column, null);
+				return new SQLitePage<T>(selection, selectionArgs, column, desc, false, size);
+			}
+		}
+		return queryPage(new SQLitePage<T>(selection, selectionArgs, column, desc, tieBreak, size));
+	}
+
+	/**
+	 * 按字段值分页获取第一页数据
+	 * 
+	 * @param column
+	 * @param desc
+	 * @param size
+	 * @return
+	 */
+	public SQLitePage<T> getPage(String column, boolean desc, int size) {
+		return getPage(null, null, column, desc, size);
+	}
+
+	/**
+	 * 按主键分页获取第一页数据, 表中没有自增主键时按ROWID分页
+	 * 
+	 * @param desc
+	 * @param size
+	 * @return
+	 */
+	public SQLitePage<T> getPageByKey(boolean desc, int size) {
+		return getPage(null, null, mAutoKeyField == null ? ROWID : mAutoKeyField.getName(), desc, size);
+	}
+
+	/**
+	 * 获取下一页数据
+	 * 
+	 * @param page
+	 *            上一页
+	 * @return 没有下一页时返回空的一页
+	 */
+	public SQLitePage<T> getNextPage(SQLitePage<T> page) {
+		SQLitePage<T> next = new SQLitePage<T>(page);
+		if (!page.mHasMore)
+			return next;
+		return queryPage(next);
+	}
+
+	private SQLitePage<T> queryPage(SQLitePage<T> page) {
+		StringBuilder selection = new StringBuilder();
+		ArrayList<Object> args = new ArrayList<Object>();
+		if (!TextUtils.isEmpty(page.mSelection)) {
+			selection.append('(').append(page.mSelection).append(')');
+			// 条件值与query一样以字符串绑定, 只有分页字段的值按类型绑定
+			final String[] selectionArgs = buildSelectionArgs(page.mSelectionArgs);
+			for (int i = 0; selectionArgs != null && i < selectionArgs.length; i++) {
+				args.add(page.mSelectionArgs[i] instanceof byte[] || page.mSelectionArgs[i] == null ? page.mSelectionArgs[i] : selectionArgs[i]);
+			}
+		}
+		final String operator = page.mDesc ? "<" : ">";
+		if (page.mAnchored) {
+			if (selection.length() > 0)
+				selection.append(" AND ");
+			if (page.mTieBreak) {
+				selection.append('(').append(page.mColumn).append(operator).append("? OR (").append(page.mColumn).append("=? AND ").append(ROWID)
+						.append(operator).append("?))");
+				args.add(page.mAfterKey);
+				args.add(page.mAfterKey);
+				args.add(page.mAfterRowId);
+			} else {
+				selection.append(page.mColumn).append(operator).append('?');
+				args.add(page.mAfterKey);
+			}
+		}
+		final String order = page.mDesc ? " DESC" : " ASC";
+		final String orderBy = page.mTieBreak ? page.mColumn + order + ',' + ROWID + order : page.mColumn + order;
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = database.queryWithFactory(BlobCursorFactory.createTyped(args.toArray()), false, mTableName, PAGE_COLUMNS,
+						selection.length() > 0 ? selection.toString() : null, null, null, null, orderBy, String.valueOf(page.mSize + 1));
+				final int[] indexes = getColumnIndexes(cursor);
+				final int rowIdIndex = cursor.getColumnIndex(ROWID_ALIAS);
+				final int keyIndex = ROWID.equalsIgnoreCase(page.mColumn) ? rowIdIndex : cursor.getColumnIndex(page.mColumn);
+				final String keyType = getKeyType(page);
+				T result;
+				while (cursor.moveToNext()) {
+					if (page.mItems.size() == page.mSize) {
+						page.mHasMore = true;
+						break;
+					}
+					result = mMapper.newInstance();
+					mMapper.read(cursor, indexes, result);
+					page.mItems.add(result);
+					page.mLastKey = readKey(cursor, keyIndex, keyType);
+					page.mLastRowId = cursor.getLong(rowIdIndex);
+				}
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			page.mItems.clear();
+			page.mHasMore = false;
+		}
+		return page;
+	}
+
+	/**
+	 * @return 分页字段建表时的类型, ROWID与自增主键为INTEGER
+	 */
+	private String getKeyType(SQLitePage<T> page) {
+		for (int i = 0; i < mSize && page.mTieBreak; i++) {
+			if (mColumns[i].mName.equals(page.mColumn))
+				return mColumns[i].getSQLType();
+		}
+		return "INTEGER";
+	}
+
+	/**
+	 * 按分页字段的类型读取本页最后一行的值, 下一页查询时以同样的类型绑定, REAL与BLOB的值不经过字符串转换
+	 */
+	private static Object readKey(Cursor cursor, int index, String type) {
+		if (cursor.isNull(index))
+			return null;
+		else if ("INTEGER".equals(type))
+			return cursor.getLong(index);
+		else if ("REAL".equals(type))
+			return cursor.getDouble(index);
+		else if ("BLOB".equals(type))
+			return cursor.getBlob(index);
+		return cursor.getString(index);
+	}
+
+	/**
+	 * 根据主键获取数据
+	 * 
+	 * @param keyValue
+	 *            主键
+	 * @return 数据实体类
+	 */
+	public T getByKey(int keyValue) {
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return null;
+		}
+		return getCached(keyValue, buildSelection(mAutoKeyField.getName()));
+	}
+
+	/**
+	 * 根据Row ID获取数据
+	 * 
+	 * @param rowid
+	 * @return 数据实体类 如果不存在数据则返回为null
+	 */
+	public T getByRow(long rowid) {
+		// 自增主键即为ROWID
+		if (mAutoKeyField != null)
+			return getCached(rowid, "ROWID = ?");
+		ArrayList<T> list = get("ROWID = ?", new Object[] { rowid });
+		return list.size() == 1 ? list.get(0) : null;
+	}
+
+	private T getCached(long key, String selection) {
+		if (!mCache.isEnabled()) {
+			ArrayList<T> list = load(selection, new Object[] { key }, null, null, null, null);
+			return list.size() == 1 ? list.get(0) : null;
+		}
+		T result = mCache.get(key);
+		if (result == null) {
+			final long version = mCache.getVersion();
+			ArrayList<T> list = load(selection, new Object[] { key }, null, null, null, null);
+			if (list.size() == 1) {
+				result = list.get(0);
+				mCache.put(key, result, version);
+			}
+		}
+		return result;
+	}
+
+	private long getKey(T c) {
+		try {
+			Object key = mAutoKeyField.get(c);
+			return key == null ? 0 : ((Number) key).longValue();
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return 0;
+		}
+	}
+
+	private void removeCached(List<T> list) {
+		if (mCache.isEnabled()) {
+			final int size = list.size();
+			for (int i = 0; i < size; i++) {
+				mCache.remove(getKey(list.get(i)));
+			}
+		}
+	}
+
+	/**
+	 * 设置按自增主键缓存的实体数量, 覆盖{@link Table#cacheSize()} <br>
+	 * 不通过此SQLiteDao修改数据后需调用{@link #clearCache()}
+	 * 
+	 * @param size
+	 *            为0时不缓存
+	 */
+	public void setCacheSize(int size) {
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return;
+		}
+		mCache.setMaxSize(size);
+	}
+
+	/**
+	 * 清空实体缓存并使查询结果缓存失效
+	 */
+	public void clearCache() {
+		mCache.clear();
+		mQueryCache.clear();
+		onModified();
+	}
+
+	/**
+	 * 写操作结束后调用 使查询结果缓存失效并通知观察者
+	 */
+	private void onModified() {
+		mTableVersion.incrementAndGet();
+		for (SQLiteObserver<T> observer : mObservers) {
+			observer.notifyChanged();
+		}
+	}
+
+	/**
+	 * 观察查询结果 注册后立即查询一次, 之后每次通过此SQLiteDao写入表时重新查询 <br>
+	 * 包括{@link #rawQuery(String, Object[], rawQueryCallback)}, 不通过此SQLiteDao修改数据后需调用{@link #clearCache()}通知观察者
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @param orderBy
+	 * @param observer
+	 *            每个实例只能注册一次
+	 */
+	public void observe(String selection, Object[] selectionArgs, String orderBy, SQLiteObserver<T> observer) {
+		observer.attach(this, selection, selectionArgs, orderBy);
+		mObservers.add(observer);
+		observer.start();
+	}
+
+	/**
+	 * 停止观察 与{@link SQLiteObserver#cancel()}相同
+	 * 
+	 * @param observer
+	 */
+	public void unobserve(SQLiteObserver<T> observer) {
+		if (mObservers.remove(observer))
+			observer.cancel();
+	}
+
+	/**
+	 * 查询观察的结果 同时读取每一行的ROWID与所有字段值, 用于比较两次结果的差异
+	 */
+	void observeQuery(String selection, Object[] selectionArgs, String orderBy, ArrayList<T> items, ArrayList<Long> keys,
+			ArrayList<String> values) {
+		SQLiteDatabase database = mManager.beginRead();
+		Cursor cursor = null;
+		try {
+			cursor = query(database, PAGE_COLUMNS, selection, selectionArgs, null, null, orderBy, null);
+			final int[] indexes = getColumnIndexes(cursor);
+			final int keyIndex = cursor.getColumnIndex(ROWID_ALIAS);
+			StringBuilder value = new StringBuilder();
+			T result;
+			int index;
+			while (cursor.moveToNext()) {
+				result = mMapper.newInstance();
+				mMapper.read(cursor, indexes, result);
+				items.add(result);
+				keys.add(cursor.getLong(keyIndex));
+				value.setLength(0);
+				for (int i = 0; i < mSize; i++) {
+					index = indexes[i];
+					if (index == -1 || cursor.isNull(index))
+						value.append('\1');
+					else if (mColumns[i] instanceof SQLiteColumn.BytesColumn)
+						value.append(HexUtils.bytesToHexString(cursor.getBlob(index)));
+					else
+						value.append(cursor.getString(index));
+					value.append('\0');
+				}
+				values.add(value.toString());
+			}
+		} finally {
+			closeCursor(cursor);
+			mManager.endRead(database);
+		}
+	}
+
+	/**
+	 * 设置缓存的查询结果数量, 覆盖{@link Table#queryCacheSize()}与{@link Table#queryCacheRows()} <br>
+	 * 缓存的结果中实体为共享实例, 不应直接修改 不通过此SQLiteDao修改数据后需调用{@link #clearCache()}
+	 * 
+	 * @param size
+	 *            缓存的查询数量 为0时不缓存
+	 * @param rows
+	 *            所有结果的总行数上限
+	 */
+	public void setQueryCacheSize(int size, int rows) {
+		mQueryCache.setMaxSize(size, rows);
+	}
+
+	/**
+	 * @return get命中查询结果缓存的次数
+	 */
+	public long getQueryCacheHitCount() {
+		return mQueryCache.getHitCount();
+	}
+
+	/**
+	 * @return get未命中查询结果缓存的次数
+	 */
+	public long getQueryCacheMissCount() {
+		return mQueryCache.getMissCount();
+	}
+
+	/**
+	 * @return getByKey与getByRow命中缓存的次数
+	 */
+	public long getCacheHitCount() {
+		return mCache.getHitCount();
+	}
+
+	/**
+	 * @return getByKey与getByRow未命中缓存的次数
+	 */
+	public long getCacheMissCount() {
+		return mCache.getMissCount();
+	}
+
+	/**
+	 * 根据主键批量获取数据 <br>
+	 * 主键分段以参数绑定查询
+	 * 
+	 * @param keyValues
+	 *            主键 支持多参
+	 * @return 以主键为key的数据, 不存在的主键不包含在内 若表中不存在自增主键则返回空的结果
+	 */
+	public LinkedHashMap<Long, T> getByKeys(long... keyValues) {
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return new LinkedHashMap<Long, T>();
+		}
+		return getIn(mAutoKeyField.getName(), keyValues);
+	}
+
+	/**
+	 * 根据RowID批量获取数据
+	 * 
+	 * @param rowids
+	 *            支持多参
+	 * @return 以RowID为key的数据, 不存在的RowID不包含在内
+	 */
+	public LinkedHashMap<Long, T> getByRows(long... rowids) {
+		return getIn(ROWID, rowids);
+	}
+
+	private LinkedHashMap<Long, T> getIn(String column, long[] keys) {
+		final int length = keys.length;
+		LinkedHashMap<Long, T> results = new LinkedHashMap<Long, T>(length * 4 / 3 + 1);
+		if (length == 0)
+			return results;
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			try {
+				Cursor cursor;
+				int size;
+				for (int offset = 0; offset < length; offset += size) {
+					size = getChunkSize(length - offset);
+					cursor = database.query(mTableName, PAGE_COLUMNS, buildIn(column, size), buildKeyArgs(keys, offset, size), null, null, null);
+					try {
+						final int[] indexes = getColumnIndexes(cursor);
+						final int keyIndex = cursor.getColumnIndex(ROWID.equals(column) ? ROWID_ALIAS : column);
+						T result;
+						while (cursor.moveToNext()) {
+							result = mMapper.newInstance();
+							mMapper.read(cursor, indexes, result);
+							results.put(cursor.getLong(keyIndex), result);
+						}
+					} finally {
+						closeCursor(cursor);
+					}
+				}
+			} finally {
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return results;
+	}
+
+	/**
+	 * 按字段构造查询 构造完成后可以保存并重复使用
+	 * 
+	 * @return 新的查询
+	 */
+	public SQLiteSelect<T> select() {
+		return new SQLiteSelect<T>(this);
+	}
+
+	/**
+	 * {@link SQLiteSelect}的查询 条件值按类型绑定
+	 */
+	ArrayList<T> select(String selection, Object[] selectionArgs, String orderBy, String limit) {
+		ArrayList<T> results = new ArrayList<T>();
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = select(database, null, selection, selectionArgs, orderBy, limit);
+				final int[] indexes = getColumnIndexes(cursor);
+				T result;
+				while (cursor.moveToNext()) {
+					result = mMapper.newInstance();
+					mMapper.read(cursor, indexes, result);
+					results.add(result);
+				}
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return results;
+	}
+
+	long selectCount(String selection, Object[] selectionArgs) {
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = select(database, new String[] { "COUNT(*)" }, selection, selectionArgs, null, null);
+				if (cursor.moveToFirst())
+					return cursor.getLong(0);
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return 0;
+	}
+
+	boolean selectExists(String selection, Object[] selectionArgs) {
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = select(database, new String[] { "1" }, selection, selectionArgs, null, "1");
+				return cursor.moveToFirst();
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return false;
+	}
+
+	/**
+	 * 条件值全部由{@link BlobCursorFactory}按类型绑定, 不生成字符串参数
+	 */
+	private Cursor select(SQLiteDatabase database, String[] columns, String selection, Object[] selectionArgs, String orderBy, String limit) {
+		return database.queryWithFactory(BlobCursorFactory.createTyped(selectionArgs), false, mTableName, columns, selection, null, null, null,
+				orderBy, limit);
+	}
+
+	/**
+	 * @return 表中数据的数量
+	 */
+	public long count() {
+		return count(null, null);
+	}
+
+	/**
+	 * 根据条件统计数据的数量
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 数据的数量 查询失败时返回0
+	 */
+	public long count(String selection, Object[] selectionArgs) {
+		Double result = aggregate("COUNT(*)", selection, selectionArgs);
+		return result == null ? 0 : result.longValue();
+	}
+
+	/**
+	 * 根据条件判断数据是否存在 找到第一行即返回
+	 * 
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 查询失败时返回false
+	 */
+	public boolean exists(String selection, Object[] selectionArgs) {
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = query(database, new String[] { "1" }, selection, selectionArgs, null, null, null, "1");
+				return cursor.moveToFirst();
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return false;
+	}
+
+	/**
+	 * 字段的最小值 Date字段为毫秒数, boolean字段为0或1
+	 * 
+	 * @param column
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 没有数据或值都为null时返回null
+	 */
+	public Double min(String column, String selection, Object[] selectionArgs) {
+		return checkColumns(new String[] { column }) ? aggregate("MIN(" + column + ")", selection, selectionArgs) : null;
+	}
+
+	/**
+	 * 字段的最大值 Date字段为毫秒数, boolean字段为0或1
+	 * 
+	 * @param column
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 没有数据或值都为null时返回null
+	 */
+	public Double max(String column, String selection, Object[] selectionArgs) {
+		return checkColumns(new String[] { column }) ? aggregate("MAX(" + column + ")", selection, selectionArgs) : null;
+	}
+
+	/**
+	 * 字段值的和 忽略null
+	 * 
+	 * @param column
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 没有数据时返回0
+	 */
+	public double sum(String column, String selection, Object[] selectionArgs) {
+		Double result = checkColumns(new String[] { column }) ? aggregate("TOTAL(" + column + ")", selection, selectionArgs) : null;
+		return result == null ? 0 : result;
+	}
+
+	/**
+	 * 字段值的平均值 忽略null
+	 * 
+	 * @param column
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 没有数据或值都为null时返回null
+	 */
+	public Double avg(String column, String selection, Object[] selectionArgs) {
+		return checkColumns(new String[] { column }) ? aggregate("AVG(" + column + ")", selection, selectionArgs) : null;
+	}
+
+	/**
+	 * 按字段分组计数
+	 * 
+	 * @param column
+	 *            分组字段
+	 * @param selection
+	 * @param selectionArgs
+	 * @return 以字段值为key, 按字段值排序 字段值为null的分组key为null
+	 */
+	public LinkedHashMap<String, Long> countBy(String column, String selection, Object[] selectionArgs) {
+		LinkedHashMap<String, Long> results = new LinkedHashMap<String, Long>();
+		if (!checkColumns(new String[] { column }))
+			return results;
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = query(database, new String[] { column, "COUNT(*)" }, selection, selectionArgs, column, null, column, null);
+				while (cursor.moveToNext()) {
+					results.put(cursor.isNull(0) ? null : cursor.getString(0), cursor.getLong(1));
+				}
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return results;
+	}
+
+	/**
+	 * @param expression
+	 *            聚合表达式
+	 * @return 结果为null或查询失败时返回null
+	 */
+	private Double aggregate(String expression, String selection, Object[] selectionArgs) {
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = query(database, new String[] { expression }, selection, selectionArgs, null, null, null, null);
+				if (cursor.moveToFirst() && !cursor.isNull(0))
+					return cursor.getDouble(0);
+			} finally {
+				closeCursor(cursor);
+				mManager.endRead(database);
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		return null;
+	}
+
+	/**
+	 * 根据条件更新数据
+	 * 
+	 * @param values
+	 * @param whereClause
+	 * @param whereArgs
+	 * @return
+	 */
+	public int upd(ContentValues values, String whereClause, Object[] whereArgs) {
+		int result = 0;
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				StringBuilder sql = new StringBuilder("UPDATE ").append(mTableName).append(" SET ");
+				Object[] bindValues = new Object[values.size()];
+				int index = 0;
+				for (Map.Entry<String, Object> entry : values.valueSet()) {
+					sql.append(index > 0 ? "," : "").append(entry.getKey()).append("=?");
+					bindValues[index++] = entry.getValue();
+				}
+				if (!TextUtils.isEmpty(whereClause))
+					sql.append(" WHERE ").append(whereClause);
+				SQLiteStatement statement = database.compileStatement(sql.toString());
+				try {
+					for (int i = 0; i < index; i++) {
+						bindValue(statement, i + 1, bindValues[i]);
+					}
+					bindArgs(statement, index + 1, whereArgs);
+					result = executeUpdateDelete(database, statement);
+				} finally {
+					statement.close();
+				}
+				database.setTransactionSuccessful();
+			} finally {
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		mCache.clear();
+		onModified();
+		return result;
+	}
+
+	public int updByKeys(List<T> list) {
+		int result = 0;
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return result;
+		}
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				SQLiteStatement statement = mManager.compileStatement(database, mUpdateSQL);
+				final int size = list.size();
+				for (int i = 0; i < size; i++) {
+					bindStatement(statement, list.get(i), true);
+					result += executeUpdateDelete(database, statement);
+				}
+				database.setTransactionSuccessful();
+			} finally {
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		removeCached(list);
+		onModified();
+		return result;
+
+	}
+
+	public int updByKey(T c) {
+		int result = 0;
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return result;
+		}
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				SQLiteStatement statement = mManager.compileStatement(database, mUpdateSQL);
+				bindStatement(statement, c, true);
+				result = executeUpdateDelete(database, statement);
+				database.setTransactionSuccessful();
+			} finally {
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		if (mCache.isEnabled())
+			mCache.remove(getKey(c));
+		onModified();
+		return result;
+	}
+
+	/**
+	 * 按自增主键批量insert或update, 所有数据在同一个事务中完成 <br>
+	 * 主键为0或null, 或表中不存在该主键时insert, 否则update <br>
+	 * insert时保留非0的主键值
+	 * 
+	 * @param list
+	 * @return insert与update的数量
+	 */
+	public UpsertResult upsert(List<T> list) {
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return new UpsertResult();
+		}
+		if (mUpsertSQL == null) {
+			StringBuilder columns = new StringBuilder();
+			StringBuilder values = new StringBuilder();
+			for (int i = 0; i < mSize; i++) {
+				if (i != mAutoKeyIndex)
+					appendValue(columns, values, i);
+			}
+			columns.append(',').append(mAutoKeyField.getName());
+			values.append(",NULLIF(?,0)");
+			mUpsertSQL = new StringBuilder("INSERT INTO ").append(mTableName).append(" (").append(columns.substring(1)).append(") VALUES (")
+					.append(values.substring(1)).append(')').toString();
+		}
+		if (mUpdateSQL == null) {
+			// 只有主键一个字段时以主键更新主键, 用于判断是否存在
+			final String key = mAutoKeyField.getName();
+			return upsert(list, "UPDATE " + mTableName + " SET " + key + '=' + key + " WHERE " + key + "=?", new int[] { mAutoKeyIndex },
+					mUpsertSQL, true);
+		}
+		int[] updateColumns = new int[mSize];
+		int index = 0;
+		for (int i = 0; i < mSize; i++) {
+			if (i != mAutoKeyIndex)
+				updateColumns[index++] = i;
+		}
+		updateColumns[index] = mAutoKeyIndex;
+		return upsert(list, mUpdateSQL, updateColumns, mUpsertSQL, true);
+	}
+
+	/**
+	 * 按唯一字段批量insert或update, 所有数据在同一个事务中完成 <br>
+	 * 表中不存在与唯一字段值相同的数据时insert, 否则update <br>
+	 * 唯一字段应通过{@link Index#unique()}声明
+	 * 
+	 * @param list
+	 * @param columns
+	 *            唯一字段
+	 * @return insert与update的数量
+	 */
+	public UpsertResult upsert(List<T> list, String... columns) {
+		if (columns == null || columns.length == 0)
+			return upsert(list);
+		int[] keys = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			keys[i] = -1;
+			for (int j = 0; j < mSize; j++) {
+				if (mColumns[j].mName.equals(columns[i]))
+					keys[i] = j;
+			}
+			if (keys[i] == -1) {
+				Log.w(Broid.TAG, "table " + mTableName + " do not have the column " + columns[i], null);
+				return new UpsertResult();
+			}
+		}
+		int[] updateColumns = new int[mSize + keys.length];
+		int index = 0;
+		StringBuilder sets = new StringBuilder();
+		for (int i = 0; i < mSize; i++) {
+			if (i == mAutoKeyIndex)
+				continue;
+			boolean key = false;
+			for (int j = 0; j < keys.length; j++) {
+				if (keys[j] == i)
+					key = true;
+			}
+			if (!key) {
+				appendSet(sets, i);
+				updateColumns[index++] = i;
+			}
+		}
+		if (sets.length() == 0)
+			sets.append(',').append(columns[0]).append('=').append(columns[0]);
+		StringBuilder sql = new StringBuilder("UPDATE ").append(mTableName).append(" SET ").append(sets.substring(1)).append(" WHERE ")
+				.append(buildSelection(columns));
+		for (int i = 0; i < keys.length; i++) {
+			updateColumns[index++] = keys[i];
+		}
+		int[] results = new int[index];
+		System.arraycopy(updateColumns, 0, results, 0, index);
+		return upsert(list, sql.toString(), results, mInsertSQL, false);
+	}
+
+	/**
+	 * @param list
+	 * @param updateSQL
+	 * @param updateColumns
+	 *            update语句中各参数对应的column
+	 * @param insertSQL
+	 * @param withKey
+	 *            insert语句是否在最后绑定主键
+	 * @return
+	 */
+	private UpsertResult upsert(List<T> list, String updateSQL, int[] updateColumns, String insertSQL, boolean withKey) {
+		UpsertResult result = new UpsertResult();
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			try {
+				database.beginTransaction();
+				SQLiteStatement update = mManager.compileStatement(database, updateSQL);
+				SQLiteStatement insert = mManager.compileStatement(database, insertSQL);
+				final int size = list.size();
+				final int length = updateColumns.length;
+				T c;
+				for (int i = 0; i < size; i++) {
+					c = list.get(i);
+					try {
+						for (int j = 0; j < length; j++) {
+							mMapper.bindColumn(update, j + 1, updateColumns[j], c);
+						}
+						if (executeUpdateDelete(database, update) > 0) {
+							result.mUpdated++;
+						} else {
+							bindStatement(insert, c, withKey);
+							if (insert.executeInsert() != -1)
+								result.mInserted++;
+						}
+					} catch (SQLException e) {
+						Log.w(Broid.TAG, null, e);
+					}
+				}
+				database.setTransactionSuccessful();
+			} finally {
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		if (withKey)
+			removeCached(list);
+		else
+			mCache.clear();
+		onModified();
+		return result;
+	}
+
+	/**
+	 * 根据主键 删除表中数据
+	 * 
+	 * @param keyValues
+	 *            主键 支持多参
+	 * @return 删除数据的数量 此返回值不会低于0 若表中不存在自增主键则会返回0
+	 */
+	public int delByKeys(int... keyValues) {
+		final int length = keyValues.length;
+		long[] keys = new long[length];
+		for (int i = 0; i < length; i++) {
+			keys[i] = keyValues[i];
+		}
+		return delByKeys(keys);
+	}
+
+	/**
+	 * 根据主键 删除表中数据 <br>
+	 * 主键分段以参数绑定, 每段使用缓存的预编译语句
+	 * 
+	 * @param keyValues
+	 *            主键 支持多参
+	 * @return 删除数据的数量 此返回值不会低于0 若表中不存在自增主键则会返回0
+	 */
+	public int delByKeys(long... keyValues) {
+		if (mAutoKeyField == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
+			return 0;
+		}
+		return deleteIn(mAutoKeyField.getName(), keyValues);
+	}
+
+	/**
+	 * 根据RowID 删除表中数据
+	 * 
+	 * @param rowids
+	 *            支持多参
+	 * @return 删除数据的数量 此返回值不会低于0
+	 */
+	public int delByRows(long... rowids) {
+		return deleteIn(ROWID, rowids);
+	}
+
+	private int deleteIn(String column, long[] keys) {
+		int result = 0;
+		final int length = keys.length;
+		if (length == 0)
+			return result;
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
 			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getReadableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					mCursor = mDatabase.query(mTableName, null, selection, buildSelectionArgs(selectionArgs), groupBy, having, orderBy,
-							limit);
-					T result;
-					while (mCursor.moveToNext()) {
-						result = mType.newInstance();
-						toField(mCursor, result);
-						results.add(result);
-					}
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					closeCursor();
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
+				database.beginTransaction();
+				result = deleteIn(database, column, keys);
+				database.setTransactionSuccessful();
 			} finally {
-				mDatabase.close();
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		if (mCache.isEnabled()) {
+			for (int i = 0; i < length; i++) {
+				mCache.remove(keys[i]);
 			}
 		}
-		return results;
+		onModified();
+		return result;
+	}
+
+	private int deleteIn(SQLiteDatabase database, String column, long[] keys) {
+		final int length = keys.length;
+		int result = 0;
+		SQLiteStatement statement;
+		int size;
+		for (int offset = 0; offset < length; offset += size) {
+			size = getChunkSize(length - offset);
+			if (size == 1 && mAutoKeyField != null && column.equals(mAutoKeyField.getName()))
+				statement = mManager.compileStatement(database, mDeleteSQL);
+			else
+				statement = mManager.compileStatement(database, "DELETE FROM " + mTableName + " WHERE " + buildIn(column, size));
+			bindKeys(statement, keys, offset, size);
+			result += executeUpdateDelete(database, statement);
+		}
+		return result;
 	}
 
 	/**
-	 * 根据条件获取数据
+	 * 在调用者已开始的写事务中批量insert, 失败时抛出异常由调用者回滚 <br>
+	 * 以下三个方法供{@link SQLiteWriteBehind}使用, 不更新缓存也不通知观察者, 由调用者在提交后调用{@link #clearCache()}
 	 * 
-	 * @param selection
-	 * @param selectionArgs
-	 * @return 数据list
+	 * @param database
+	 *            {@link SQLiteDatabaseManager#beginWrite()}返回的连接
+	 * @return insert数据的数量
 	 */
-	public ArrayList<T> get(String selection, Object[] selectionArgs) {
-		return get(selection, selectionArgs, null, null, null, null);
+	int insertBatch(SQLiteDatabase database, List<T> list) {
+		SQLiteStatement statement = mManager.compileStatement(database, mInsertSQL);
+		final int size = list.size();
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			bindStatement(statement, list.get(i), false);
+			if (statement.executeInsert() != -1)
+				result++;
+		}
+		return result;
 	}
 
 	/**
-	 * 获取所有数据
+	 * 在调用者已开始的写事务中按主键批量update
 	 * 
-	 * @return 数据list
+	 * @return update数据的数量 表中不存在自增主键或没有可更新的字段时返回0
 	 */
-	public ArrayList<T> get() {
-		return get(null, null, null, null, null, null);
+	int updateBatch(SQLiteDatabase database, List<T> list) {
+		if (mAutoKeyField == null || mUpdateSQL == null) {
+			Log.w(Broid.TAG, "table " + mTableName + " can not update by the primary key", null);
+			return 0;
+		}
+		SQLiteStatement statement = mManager.compileStatement(database, mUpdateSQL);
+		final int size = list.size();
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			bindStatement(statement, list.get(i), true);
+			result += executeUpdateDelete(database, statement);
+		}
+		return result;
 	}
 
 	/**
-	 * 根据主键获取数据
+	 * 在调用者已开始的写事务中按主键批量delete
 	 * 
-	 * @param keyValue
-	 *            主键
-	 * @return 数据实体类
+	 * @return delete数据的数量 表中不存在自增主键时返回0
 	 */
-	public T getByKey(int keyValue) {
+	int deleteBatch(SQLiteDatabase database, long[] keys) {
 		if (mAutoKeyField == null) {
 			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
-			return null;
+			return 0;
 		}
-		ArrayList<T> list = get(buildSelection(mAutoKeyField.getName()), new Object[] { keyValue });
-		return list.size() == 1 ? list.get(0) : null;
+		return deleteIn(database, mAutoKeyField.getName(), keys);
 	}
 
 	/**
-	 * 根据Row ID获取数据
+	 * 从JSON数组导入数据 见{@link #importJSON(Reader, boolean, ProgressListener)}
 	 * 
-	 * @param rowid
-	 * @return 数据实体类 如果不存在数据则返回为null
+	 * @param reader
+	 * @param listener
+	 *            可以为null
+	 * @return insert数据的数量
 	 */
-	public T getByRow(long rowid) {
-		ArrayList<T> list = get("ROWID = ?", new Object[] { rowid });
-		return list.size() == 1 ? list.get(0) : null;
+	public int importJSON(Reader reader, ProgressListener listener) {
+		return importJSON(reader, false, listener);
 	}
 
 	/**
-	 * 根据条件更新数据
+	 * 从UTF-8编码的JSON数组导入数据 见{@link #importJSON(Reader, boolean, ProgressListener)}
 	 * 
-	 * @param values
-	 * @param whereClause
-	 * @param whereArgs
-	 * @return
+	 * @param in
+	 * @param upsert
+	 * @param listener
+	 *            可以为null
+	 * @return insert与update数据的数量
 	 */
-	public int upd(ContentValues values, String whereClause, Object[] whereArgs) {
-		int result = 0;
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					result = mDatabase.update(mTableName, values, whereClause, buildSelectionArgs(whereArgs));
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
-			}
+	public int importJSON(InputStream in, boolean upsert, ProgressListener listener) {
+		try {
+			return importJSON(new InputStreamReader(in, "UTF-8"), upsert, listener);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return 0;
 		}
-		return result;
 	}
 
-	public int updByKeys(List<T> list) {
+	/**
+	 * 从JSON数组导入数据 <br>
+	 * <ul>
+	 * <li>逐个解析数组元素, 每{@value #IMPORT_BATCH_SIZE}个在一个事务中写入, 内存中最多只保留一个事务的数据</li>
+	 * <li>解析在写锁之外进行, 从网络读取时不会阻塞其他写操作</li>
+	 * <li>按字段名直接设置属性, 不需要setter, 非public的字段同样导入; JSON中不存在或为null的字段保持默认值</li>
+	 * <li>解析失败时已提交的数据保留</li>
+	 * <li>导入结束后关闭reader</li>
+	 * </ul>
+	 * 
+	 * @param reader
+	 * @param upsert
+	 *            是否按自增主键insert或update, 见{@link #upsert(List)} 为false时全部insert
+	 * @param listener
+	 *            可以为null
+	 * @return insert与update数据的数量
+	 */
+	public int importJSON(Reader reader, boolean upsert, ProgressListener listener) {
 		int result = 0;
-		if (mAutoKeyField == null) {
+		if (upsert && mAutoKeyField == null) {
 			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
 			return result;
 		}
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					ContentValues values = null;
-					final int size = list.size();
-					StringBuilder whereClause = new StringBuilder(mAutoKeyField.getName());
-					whereClause.append("=?");
-					String[] whereArgs = new String[1];
-					for (int i = 0; i < size; i++) {
-						values = toValue(list.get(i));
-						whereArgs[0] = values.getAsString(mAutoKeyField.getName());
-						if (mDatabase.update(mTableName, values, whereClause.toString(), whereArgs) != -1)
-							result++;
-					}
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
+		JSONReader json = new JSONReader(reader);
+		try {
+			ArrayList<T> list = new ArrayList<T>(IMPORT_BATCH_SIZE);
+			json.startArray();
+			boolean more = json.hasNext();
+			while (more) {
+				list.clear();
+				while (more && list.size() < IMPORT_BATCH_SIZE) {
+					list.add(readJSON((JSONObject) json.readObject()));
+					more = json.hasNext();
 				}
+				if (upsert) {
+					UpsertResult upsertResult = upsert(list);
+					result += upsertResult.mInserted + upsertResult.mUpdated;
+				} else
+					result += save(list);
+				if (listener != null)
+					listener.onProgress(result);
+			}
+			json.endArray();
+		} catch (Exception e) {
+			Log.w(Broid.TAG, "import " + mTableName + " stopped after " + result + " rows", e);
+		} finally {
+			try {
+				json.close();
 			} catch (Exception e) {
 				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
 			}
 		}
 		return result;
-
 	}
 
-	public int updByKey(T c) {
-		int result = 0;
-		if (mAutoKeyField == null) {
-			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
-			return result;
-		}
-		synchronized (LOCK) {
+	/**
+	 * 按字段映射从JSON对象生成实例
+	 */
+	private T readJSON(JSONObject object) {
+		T result = mMapper.newInstance();
+		final ParserConfig config = ParserConfig.getGlobalInstance();
+		Object value;
+		Class<?> type;
+		for (int i = 0; i < mSize; i++) {
+			value = object.get(mColumns[i].mName);
+			if (value == null)
+				continue;
+			type = mColumns[i].mField.getType();
 			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					ContentValues values = null;
-					StringBuilder whereClause = new StringBuilder(mAutoKeyField.getName());
-					whereClause.append("=?");
-					values = toValue(c);
-					String[] whereArgs = new String[] { values.getAsString(mAutoKeyField.getName()) };
-					result = mDatabase.update(mTableName, values, whereClause.toString(), whereArgs);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
+				if (char.class == type || Character.class == type)
+					value = TypeUtils.castToChar(value);
+				else
+					value = TypeUtils.cast(value, type, config);
+				mColumns[i].mField.set(result, value);
 			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
+				Log.w(Broid.TAG, "set " + mColumns[i].mName + " value throw exception", e);
 			}
 		}
 		return result;
 	}
 
 	/**
-	 * 根据主键 删除表中数据
+	 * 将表中所有数据导出为JSON数组 见{@link #exportJSON(Writer, String, Object[], String)}
 	 * 
-	 * @param keyValues
-	 *            主键 支持多参
-	 * @return 删除数据的数量 此返回值不会低于0 若表中不存在自增主键则会返回0
+	 * @param writer
+	 * @return 导出数据的数量 失败时返回-1
 	 */
-	public int delByKeys(int... keyValues) {
-		int result = 0;
-		if (mAutoKeyField == null) {
-			Log.w(Broid.TAG, "table " + mTableName + " do not have the primary key", null);
-			return result;
-		}
-		synchronized (LOCK) {
-			StringBuilder stringBuilder = new StringBuilder();
-			final int length = keyValues.length;
-			for (int i = 0; i < length; i++) {
-				stringBuilder.append(',').append(String.valueOf(keyValues[i]));
-			}
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					result = mDatabase.delete(mTableName, mAutoKeyField.getName() + " IN (" + stringBuilder.substring(1).toString() + ')',
-							null);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
-			}
+	public int exportJSON(Writer writer) {
+		return exportJSON(writer, null, null, null);
+	}
+
+	/**
+	 * 将查询结果以UTF-8编码导出为JSON数组 见{@link #exportJSON(Writer, String, Object[], String)}
+	 * 
+	 * @param out
+	 * @param selection
+	 * @param selectionArgs
+	 * @param orderBy
+	 * @return 导出数据的数量 失败时返回-1
+	 */
+	public int exportJSON(OutputStream out, String selection, Object[] selectionArgs, String orderBy) {
+		try {
+			return exportJSON(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), selection, selectionArgs, orderBy);
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+			return -1;
 		}
-		return result;
 	}
 
 	/**
-	 * 根据RowID 删除表中数据
+	 * 将查询结果导出为JSON数组 <br>
+	 * <ul>
+	 * <li>逐行读取并写入, 内存中只保留当前行</li>
+	 * <li>按字段映射写入属性值, 与getter无关, 非public的字段同样导出; 值为null的字段不写入</li>
+	 * <li>导出期间占用一个读连接, 非WAL模式下写操作等待导出结束</li>
+	 * <li>导出的数据可以通过{@link #importJSON(Reader, boolean, ProgressListener)}导入</li>
+	 * <li>导出结束后关闭writer</li>
+	 * </ul>
 	 * 
-	 * @param rowids
-	 *            支持多参
-	 * @return 删除数据的数量 此返回值不会低于0
+	 * @param writer
+	 * @param selection
+	 * @param selectionArgs
+	 * @param orderBy
+	 * @return 导出数据的数量 失败时返回-1
 	 */
-	public int delByRows(long... rowids) {
+	public int exportJSON(Writer writer, String selection, Object[] selectionArgs, String orderBy) {
 		int result = 0;
-		synchronized (LOCK) {
-			StringBuilder stringBuilder = new StringBuilder();
-			final int length = rowids.length;
-			for (int i = 0; i < length; i++) {
-				stringBuilder.append(',').append(String.valueOf(rowids[i]));
+		SQLiteIterator<T> iterator = iterate(selection, selectionArgs, null, null, orderBy, null, false);
+		JSONWriter json = new JSONWriter(writer);
+		try {
+			json.startArray();
+			while (iterator.hasNext()) {
+				writeJSON(json, iterator.next());
+				result++;
 			}
+			json.endArray();
+			json.flush();
+		} catch (Exception e) {
+			Log.w(Broid.TAG, "export " + mTableName + " stopped after " + result + " rows", e);
+			result = -1;
+		} finally {
+			iterator.close();
 			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					result = mDatabase.delete(mTableName, "ROWID IN (" + stringBuilder.substring(1).toString() + ')', null);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
+				json.close();
 			} catch (Exception e) {
 				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
 			}
 		}
 		return result;
 	}
 
+	private void writeJSON(JSONWriter json, T c) throws IllegalAccessException {
+		json.startObject();
+		Object value;
+		for (int i = 0; i < mSize; i++) {
+			value = mColumns[i].mField.get(c);
+			if (value == null)
+				continue;
+			json.writeKey(mColumns[i].mName);
+			json.writeValue(value);
+		}
+		json.endObject();
+	}
+
+	/**
+	 * 备份此表所在的整个数据库 {@link Table#database()} <br>
+	 * 备份为一个一致的快照, WAL模式下备份期间不阻塞写操作, 否则写操作等待备份结束
+	 * 
+	 * @param target
+	 *            备份文件 已存在时覆盖
+	 * @return 是否备份成功
+	 */
+	public boolean backup(File target) {
+		return mManager.backup(target);
+	}
+
 	/**
 	 * 删除表中所有数据
 	 * 
 	 * @return 删除数据的数量 此返回值不会低于0
 	 */
 	public int del() {
-		int result = 0;
-		synchronized (LOCK) {
-			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					result = mDatabase.delete(mTableName, null, null);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
-			} finally {
-				mDatabase.close();
-			}
-		}
-		return result;
+		return del(null, null);
 	}
 
 	/**
@@ -754,50 +2476,86 @@ public class SQLiteDao<T> {
 	 */
 	public int del(String whereClause, Object[] whereArgs) {
 		int result = 0;
-		synchronized (LOCK) {
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
 			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
+				database.beginTransaction();
+				SQLiteStatement statement = database.compileStatement(TextUtils.isEmpty(whereClause) ? "DELETE FROM " + mTableName : "DELETE FROM "
+						+ mTableName + " WHERE " + whereClause);
 				try {
-					mDatabase.beginTransaction();
-					result = mDatabase.delete(mTableName, whereClause, buildSelectionArgs(whereArgs));
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
+					bindArgs(statement, 1, whereArgs);
+					result = executeUpdateDelete(database, statement);
 				} finally {
-					endTransaction();
+					statement.close();
 				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
+				database.setTransactionSuccessful();
 			} finally {
-				mDatabase.close();
+				endTransaction(database);
+				mManager.endWrite();
 			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
 		}
+		mCache.clear();
+		onModified();
 		return result;
 	}
 
+	/**
+	 * 执行SQL语句 cursor只在回调内有效 <br>
+	 * 在写连接的事务中执行, 语句可以修改数据或表结构 <br>
+	 * 回调内可以继续对同一数据库进行读写, 读操作(包括WAL模式下)同样使用写连接, 可以看到事务中未提交的修改 <br>
+	 * 执行后清空缓存并通知观察者, 只读查询使用{@link #rawRead(String, Object[], rawQueryCallback)}
+	 * 
+	 * @param sql
+	 * @param selectionArgs
+	 * @param callback
+	 */
 	public void rawQuery(String sql, Object[] selectionArgs, rawQueryCallback callback) {
-		synchronized (LOCK) {
+		try {
+			SQLiteDatabase database = mManager.beginWrite();
+			Cursor cursor = null;
 			try {
-				mSqLiteHelper = new SQLiteHelper();
-				mDatabase = mSqLiteHelper.getWritableDatabase();
-				try {
-					mDatabase.beginTransaction();
-					mCursor = mDatabase.rawQuery(sql, buildSelectionArgs(selectionArgs));
-					if (callback != null)
-						callback.processCursor(mCursor);
-					mDatabase.setTransactionSuccessful();
-				} catch (Exception e) {
-					throw e;
-				} finally {
-					closeCursor();
-					endTransaction();
-				}
-			} catch (Exception e) {
-				Log.w(Broid.TAG, null, e);
+				database.beginTransaction();
+				cursor = database.rawQueryWithFactory(BlobCursorFactory.create(selectionArgs), sql, buildSelectionArgs(selectionArgs), null);
+				if (callback != null)
+					callback.processCursor(cursor);
+				database.setTransactionSuccessful();
+			} finally {
+				closeCursor(cursor);
+				endTransaction(database);
+				mManager.endWrite();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
+		}
+		mCache.clear();
+		onModified();
+	}
+
+	/**
+	 * 执行只读查询 cursor只在回调内有效 <br>
+	 * 与其他读操作并发执行, WAL模式下使用只读连接, 语句不能修改数据 <br>
+	 * 回调内不能对同一数据库进行写操作
+	 * 
+	 * @param sql
+	 * @param selectionArgs
+	 * @param callback
+	 */
+	public void rawRead(String sql, Object[] selectionArgs, rawQueryCallback callback) {
+		try {
+			SQLiteDatabase database = mManager.beginRead();
+			Cursor cursor = null;
+			try {
+				cursor = database.rawQueryWithFactory(BlobCursorFactory.create(selectionArgs), sql, buildSelectionArgs(selectionArgs), null);
+				if (callback != null)
+					callback.processCursor(cursor);
 			} finally {
-				mDatabase.close();
+				closeCursor(cursor);
+				mManager.endRead(database);
 			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, null, e);
 		}
 	}
 
@@ -805,20 +2563,109 @@ public class SQLiteDao<T> {
 		public void processCursor(Cursor cursor);
 	}
 
-	class SQLiteHelper extends SQLiteOpenHelper {
+	/**
+	 * 导入进度 每个事务提交后在导入线程中回调
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param count
+		 *            已导入的数量
+		 */
+		public void onProgress(int count);
+	}
+
+	/**
+	 * 批量insert或update的结果
+	 */
+	public static class UpsertResult {
+
+		int mInserted;
 
-		SQLiteHelper() {
-			super(Broid.getApplication(), mTable.database(), null, mVersion);
-			Log.d(Broid.TAG, mTable.database() + " version is " + mVersion, null);
+		int mUpdated;
+
+		/**
+		 * @return insert数据的数量
+		 */
+		public int getInserted() {
+			return mInserted;
 		}
 
-		@Override
-		public void onCreate(SQLiteDatabase db) {}
+		/**
+		 * @return update数据的数量
+		 */
+		public int getUpdated() {
+			return mUpdated;
+		}
+	}
+
+	/**
+	 * 在查询执行前将条件值中的byte[]重新以BLOB绑定, 或将所有条件值按类型重新绑定
+	 */
+	private static final class BlobCursorFactory implements CursorFactory {
+
+		private final Object[] mArgs;
+
+		private final boolean mTyped;
+
+		private BlobCursorFactory(Object[] args, boolean typed) {
+			mArgs = args;
+			mTyped = typed;
+		}
+
+		/**
+		 * @return 条件值中没有byte[]与null时返回null, 使用默认的cursor
+		 */
+		static BlobCursorFactory create(Object[] args) {
+			if (args != null) {
+				final int length = args.length;
+				for (int i = 0; i < length; i++) {
+					if (args[i] instanceof byte[] || args[i] == null)
+						return new BlobCursorFactory(args, false);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * 所有条件值按类型重新绑定, 见{@link SQLiteDao#bindValue(SQLiteProgram, int, Object)}
+		 * 
+		 * @return 没有条件值时返回null
+		 */
+		static BlobCursorFactory createTyped(Object[] args) {
+			return args == null || args.length == 0 ? null : new BlobCursorFactory(args, true);
+		}
 
+		@SuppressWarnings("deprecation")
 		@Override
-		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+			final int length = mArgs.length;
+			for (int i = 0; i < length; i++) {
+				if (mTyped || mArgs[i] == null)
+					bindValue(query, i + 1, mArgs[i]);
+				else if (mArgs[i] instanceof byte[])
+					query.bindBlob(i + 1, (byte[]) mArgs[i]);
+			}
+			return new SQLiteCursor(db, masterQuery, editTable, query);
+		}
+	}
+
+	/**
+	 * 表结构维护 直接在共享的数据库连接上建表或增加字段
+	 */
+	class SQLiteHelper {
+
+		void onCreate(SQLiteDatabase db) {
+			String sql = getCreateSQL();
+			if (sql != null) {
+				Log.d(Broid.TAG, "add a new table, create sql is\r\n" + sql, null);
+				db.execSQL(sql);
+			}
+		}
+
+		void onUpgrade(SQLiteDatabase db) {
 			String sql;
-			if (mAlterFields != null) {
+			db.beginTransaction();
+			try {
 				final int size = mAlterFields.size();
 				for (int i = 0; i < size; i++) {
 					sql = getAlterSQL(mAlterFields.get(i));
@@ -827,36 +2674,112 @@ public class SQLiteDao<T> {
 						db.execSQL(sql);
 					}
 				}
-			} else {
-				sql = getCreateSQL();
-				if (sql != null) {
-					Log.d(Broid.TAG, "add a new table, create sql is\r\n" + sql, null);
-					db.execSQL(sql);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+
+		/**
+		 * 重建表, 用于将旧版本以TEXT声明的数值字段转换为INTEGER或REAL <br>
+		 * 在同一个事务中建立新表, 复制数据, 删除旧表后重命名, 并重建旧表上的索引, 映射类中已删除的字段保持原样
+		 */
+		boolean onRebuild(SQLiteDatabase db, HashMap<String, String> tableFields) {
+			final String temp = mTableName + "_rebuild";
+			final Field autoKeyField = mAutoKeyField;
+			ArrayList<String> indexes = new ArrayList<String>();
+			db.beginTransaction();
+			Cursor cursor = null;
+			try {
+				cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type='index' AND tbl_name=? AND sql IS NOT NULL",
+						new String[] { mTableName });
+				while (cursor.moveToNext()) {
+					indexes.add(cursor.getString(0));
+				}
+				closeCursor(cursor);
+				mAutoKeyField = null;
+				String sql = getCreateSQL(temp);
+				if (sql == null)
+					return false;
+				StringBuilder create = new StringBuilder(sql.substring(0, sql.length() - 1));
+				StringBuilder columns = new StringBuilder();
+				StringBuilder values = new StringBuilder();
+				HashMap<String, String> extras = new HashMap<String, String>(tableFields);
+				String name;
+				for (int i = 0; i < mSize; i++) {
+					name = mColumns[i].mName;
+					if (extras.remove(name) == null)
+						continue;
+					columns.append(',').append(name);
+					// 旧版本的Boolean以字符串true, false存储
+					if (mColumns[i] instanceof SQLiteColumn.BooleanObjectColumn)
+						values.append(",CASE ").append(name).append(" WHEN 'true' THEN 1 WHEN 'false' THEN 0 ELSE ").append(name).append(" END");
+					else
+						values.append(',').append(name);
+				}
+				for (Map.Entry<String, String> entry : extras.entrySet()) {
+					create.append(" ,").append(entry.getKey());
+					if (!TextUtils.isEmpty(entry.getValue()))
+						create.append(' ').append(entry.getValue());
+					columns.append(',').append(entry.getKey());
+					values.append(',').append(entry.getKey());
+				}
+				create.append(')');
+				if (mAutoKeyField == null) {
+					columns.append(',').append(ROWID);
+					values.append(',').append(ROWID);
+				}
+				db.execSQL("DROP TABLE IF EXISTS " + temp);
+				Log.d(Broid.TAG, "rebuild the table, create sql is\r\n" + create, null);
+				db.execSQL(create.toString());
+				db.execSQL("INSERT INTO " + temp + " (" + columns.substring(1) + ") SELECT " + values.substring(1) + " FROM " + mTableName);
+				if (mAutoKeyField != null) {
+					// 保留自增序列, 避免重用已删除的主键
+					db.execSQL("DELETE FROM sqlite_sequence WHERE name='" + temp + "'");
+					db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + temp + "', seq FROM sqlite_sequence WHERE name='" + mTableName
+							+ "'");
 				}
+				db.execSQL("DROP TABLE " + mTableName);
+				db.execSQL("ALTER TABLE " + temp + " RENAME TO " + mTableName);
+				final int size = indexes.size();
+				for (int i = 0; i < size; i++) {
+					db.execSQL(indexes.get(i));
+				}
+				db.setTransactionSuccessful();
+				return true;
+			} catch (SQLException e) {
+				// 重建失败时保留旧表
+				Log.w(Broid.TAG, "rebuild the table " + mTableName + " failed", e);
+				mAutoKeyField = autoKeyField;
+				return false;
+			} finally {
+				closeCursor(cursor);
+				db.endTransaction();
 			}
 		}
 
 		private String getCreateSQL() {
-			StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(mTableName).append("( ");
+			return getCreateSQL(mTableName);
+		}
+
+		private String getCreateSQL(String tableName) {
+			StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(tableName).append("( ");
 			StringBuilder s = new StringBuilder();
+			Column column;
 			for (int i = 0; i < mSize; i++) {
-				mFields.get(i).setAccessible(true);
-				mIgnore = mFields.get(i).getAnnotation(Ignore.class);
-				if (mIgnore != null)
-					continue;
-				mColumn = mFields.get(i).getAnnotation(Column.class);
-				if (mColumn != null) {
+				column = mFields.get(i).getAnnotation(Column.class);
+				if (column != null) {
 					s.append(mFields.get(i).getName());
-					initField(s, mFields.get(i));
-					if (mColumn.isAutoKey()) {
+					initField(s, mColumns[i]);
+					if (column.isAutoKey()) {
 						s.append("PRIMARY KEY AUTOINCREMENT");
 						mAutoKeyField = mFields.get(i);
-					} else if (!TextUtils.isEmpty(mColumn.value())) {
-						s.append("DEFAULT ").append(mColumn.value());
+					} else if (!TextUtils.isEmpty(column.value())) {
+						s.append("DEFAULT ").append(column.value());
 					}
 				} else {
 					s.append(mFields.get(i).getName());
-					initField(s, mFields.get(i));
+					initField(s, mColumns[i]);
 				}
 				s.append(" ,");
 			}
@@ -869,42 +2792,22 @@ public class SQLiteDao<T> {
 			return sql.append(s).toString();
 		}
 
-		private String getAlterSQL(Field alterField) {
+		private String getAlterSQL(SQLiteColumn alterColumn) {
 			StringBuilder sql = new StringBuilder("ALTER TABLE ").append(mTableName).append(" ADD COLUMN ");
-			sql.append(alterField.getName());
-			initField(sql, alterField);
-			mColumn = alterField.getAnnotation(Column.class);
-			if (mColumn != null && !TextUtils.isEmpty(mColumn.value())) {
-				sql.append("DEFAULT ").append(mColumn.value());
+			sql.append(alterColumn.mName);
+			initField(sql, alterColumn);
+			Column column = alterColumn.mField.getAnnotation(Column.class);
+			if (column != null && !TextUtils.isEmpty(column.value())) {
+				sql.append("DEFAULT ").append(column.value());
 			}
 			return sql.toString();
 		}
 
-		private void initField(StringBuilder s, Field field) {
-			if (field == mAutoKeyField || int.class == field.getType() || Integer.class.isAssignableFrom(field.getType())) {
+		private void initField(StringBuilder s, SQLiteColumn column) {
+			if (column.mField == mAutoKeyField) {
 				s.append(" INTEGER ");
-			} else if (byte[].class == field.getType()) {
-				s.append(" TEXT ");
-			} else if (String.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (char.class == field.getType() || Character.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (short.class == field.getType() || Short.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (long.class == field.getType() || Long.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (float.class == field.getType() || Float.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (double.class == field.getType() || Double.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (boolean.class == field.getType() || Boolean.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else if (Date.class.isAssignableFrom(field.getType())) {
-				s.append(" TEXT ");
-			} else {
-				Log.w(Broid.TAG, "can't read the type'" + field.getType() + "' , and the column type will be TEXT", null);
-				s.append(" TEXT ");
-			}
+			} else
+				s.append(' ').append(column.getSQLType()).append(' ');
 		}
 	}
 
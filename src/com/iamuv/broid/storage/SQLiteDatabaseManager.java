@@ -0,0 +1,663 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+import com.iamuv.broid.utils.SystemUtils;
+
+/**
+ * SQLite数据库连接管理 <br>
+ * <ul>
+ * <li>每个数据库文件只对应一个实例, 由所有指向该数据库的SQLiteDao共享</li>
+ * <li>连接按引用计数管理, 计数归零后空闲一段时间自动关闭</li>
+ * <li>关闭后再次使用时重新打开</li>
+ * <li>读写锁按数据库文件区分, 读操作之间可以并发, 写操作只在同一数据库文件内串行</li>
+ * <li>写连接上缓存预编译语句, 连接关闭时一并释放</li>
+ * <li>开启WAL日志模式后, 读操作使用独立的只读连接池, 不再与写操作互相阻塞, 并由后台线程在写操作间隙执行checkpoint</li>
+ * </ul>
+ */
+final class SQLiteDatabaseManager {
+
+	private static final ConcurrentHashMap<String, SQLiteDatabaseManager> MANAGERS = new ConcurrentHashMap<String, SQLiteDatabaseManager>();
+
+	private static ScheduledThreadPoolExecutor SCHEDULER;
+
+	// 写操作结束后延迟执行checkpoint的时间, 连续写入时合并为一次
+	private static final long CHECKPOINT_DELAY = 1000;
+
+	private final String mDatabaseName;
+
+	private SQLiteDatabase mDatabase;
+
+	private int mReferenceCount;
+
+	private ScheduledFuture<?> mCloseFuture;
+
+	private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+	/**
+	 * 非WAL模式下打开中的迭代器 对应打开迭代器的线程与数量 <br>
+	 * 迭代器可以在其他线程关闭, 不能持有只能由加锁线程释放的读锁, 写操作等待计数归零
+	 */
+	private final HashMap<Thread, Integer> mIterators = new HashMap<Thread, Integer>();
+
+	private volatile boolean mWriteAheadLogging;
+
+	private final int mReaderSize;
+
+	private final Semaphore mReaderPermits;
+
+	private final LinkedList<SQLiteDatabase> mReaders = new LinkedList<SQLiteDatabase>();
+
+	private boolean mCheckpointPending;
+
+	private final HashMap<String, SQLiteStatement> mStatements = new HashMap<String, SQLiteStatement>();
+
+	private static final String SCHEMA_TABLE = "broid_schema";
+
+	/**
+	 * 已验证的表结构 表名对应指纹与自增主键名, 连接关闭后重新读取
+	 */
+	private HashMap<String, String[]> mSchemas;
+
+	private final Runnable mCloseTask = new Runnable() {
+
+		@Override
+		public void run() {
+			closeIfIdle();
+		}
+	};
+
+	private final Runnable mCheckpointTask = new Runnable() {
+
+		@Override
+		public void run() {
+			checkpoint();
+		}
+	};
+
+	private SQLiteDatabaseManager(String databaseName) {
+		mDatabaseName = databaseName;
+		mReaderSize = SystemUtils.getDefaultThreadPoolSize(4);
+		mReaderPermits = new Semaphore(mReaderSize, true);
+	}
+
+	/**
+	 * 获取数据库对应的连接管理
+	 *
+	 * @param databaseName
+	 *            数据库名
+	 * @return 同一个数据库名总是返回同一个实例
+	 */
+	static SQLiteDatabaseManager get(String databaseName) {
+		SQLiteDatabaseManager manager = MANAGERS.get(databaseName);
+		if (manager == null) {
+			SQLiteDatabaseManager created = new SQLiteDatabaseManager(databaseName);
+			manager = MANAGERS.putIfAbsent(databaseName, created);
+			if (manager == null)
+				manager = created;
+		}
+		return manager;
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+		if (SCHEDULER == null) {
+			SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "sqlite idle thread");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			SCHEDULER.setKeepAliveTime(60, TimeUnit.SECONDS);
+			SCHEDULER.allowCoreThreadTimeOut(true);
+		}
+		return SCHEDULER;
+	}
+
+	final String getDatabaseName() {
+		return mDatabaseName;
+	}
+
+	final boolean isWriteAheadLogging() {
+		return mWriteAheadLogging;
+	}
+
+	/**
+	 * 开启WAL日志模式, 对整个数据库文件生效 <br>
+	 * 系统的SQLite不支持WAL时保持原有的日志模式
+	 */
+	void enableWriteAheadLogging() {
+		if (mWriteAheadLogging)
+			return;
+		SQLiteDatabase database = beginWrite();
+		try {
+			if (!mWriteAheadLogging && applyWriteAheadLogging(database)) {
+				mWriteAheadLogging = true;
+				Log.d(Broid.TAG, mDatabaseName + " enable write ahead logging, reader pool size is " + mReaderSize, null);
+			}
+		} finally {
+			endWrite();
+		}
+	}
+
+	/**
+	 * 在写连接上切换为WAL日志模式并关闭自动checkpoint, 每次打开连接后都需要重新执行 <br>
+	 * API 16以上打开连接时系统会将日志模式恢复为默认值, API 11以上先通过enableWriteAheadLogging()开启, 使系统保持该模式
+	 *
+	 * @return 连接是否处于WAL模式
+	 */
+	private boolean applyWriteAheadLogging(SQLiteDatabase database) {
+		if (Build.VERSION.SDK_INT >= 11) {
+			try {
+				SQLiteDatabase.class.getMethod("enableWriteAheadLogging").invoke(database);
+			} catch (Exception e) {
+				Log.w(Broid.TAG, mDatabaseName + " enableWriteAheadLogging fail", e);
+			}
+		}
+		final String mode = pragma(database, "PRAGMA journal_mode=WAL");
+		if (!"wal".equalsIgnoreCase(mode)) {
+			Log.w(Broid.TAG, mDatabaseName + " can not enable write ahead logging, journal mode is " + mode, null);
+			return false;
+		}
+		pragma(database, "PRAGMA wal_autocheckpoint=0");
+		return true;
+	}
+
+	/**
+	 * 获取数据库连接, 引用计数加一 <br>
+	 * 每次调用都必须对应一次{@link #release()}
+	 *
+	 * @return 已打开的数据库连接
+	 */
+	synchronized SQLiteDatabase acquire() {
+		if (mCloseFuture != null) {
+			mCloseFuture.cancel(false);
+			mCloseFuture = null;
+		}
+		if (mDatabase == null || !mDatabase.isOpen()) {
+			mDatabase = Broid.getApplication().openOrCreateDatabase(mDatabaseName, Context.MODE_PRIVATE, null);
+			Log.d(Broid.TAG, mDatabaseName + " open", null);
+			// 无法恢复WAL模式时读操作改回使用读锁与共享连接
+			if (mWriteAheadLogging && !applyWriteAheadLogging(mDatabase))
+				mWriteAheadLogging = false;
+		}
+		mReferenceCount++;
+		return mDatabase;
+	}
+
+	/**
+	 * 释放数据库连接, 引用计数减一 <br>
+	 * 计数归零后连接在空闲{@link Broid#getSQLiteIdleTime()}毫秒后关闭
+	 */
+	synchronized void release() {
+		if (mReferenceCount == 0) {
+			Log.w(Broid.TAG, mDatabaseName + " release without acquire", null);
+			return;
+		}
+		if (--mReferenceCount == 0) {
+			final long idleTime = Broid.getSQLiteIdleTime();
+			if (idleTime > 0)
+				mCloseFuture = getScheduler().schedule(mCloseTask, idleTime, TimeUnit.MILLISECONDS);
+			else
+				closeIfIdle();
+		}
+	}
+
+	/**
+	 * 获取读操作使用的数据库连接, 必须对应一次{@link #endRead(SQLiteDatabase)} <br>
+	 * WAL模式下返回只读连接池中的连接, 否则获取读锁并返回共享连接
+	 *
+	 * @return 已打开的数据库连接
+	 */
+	SQLiteDatabase beginRead() {
+		final SQLiteDatabase reader = beginPooledRead();
+		if (reader != null)
+			return reader;
+		mLock.readLock().lock();
+		try {
+			return acquire();
+		} catch (RuntimeException e) {
+			mLock.readLock().unlock();
+			throw e;
+		}
+	}
+
+	void endRead(SQLiteDatabase database) {
+		final boolean reader;
+		synchronized (this) {
+			reader = database != mDatabase;
+		}
+		if (reader) {
+			try {
+				recycleReader(database);
+			} finally {
+				release();
+			}
+		} else {
+			try {
+				release();
+			} finally {
+				mLock.readLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * 获取迭代器使用的数据库连接, 必须对应一次{@link #endIterate(SQLiteDatabase, Thread)} <br>
+	 * 与{@link #beginRead()}不同, 可以在任意线程结束, 打开期间当前线程不能对同一数据库进行写操作
+	 *
+	 * @return 已打开的数据库连接
+	 */
+	SQLiteDatabase beginIterate() {
+		final SQLiteDatabase reader = beginPooledRead();
+		if (reader != null)
+			return reader;
+		// 读锁只在登记期间持有, 保证登记时没有正在进行的写操作
+		mLock.readLock().lock();
+		try {
+			SQLiteDatabase database = acquire();
+			synchronized (this) {
+				final Thread thread = Thread.currentThread();
+				final Integer count = mIterators.get(thread);
+				mIterators.put(thread, count == null ? 1 : count + 1);
+			}
+			return database;
+		} finally {
+			mLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param database
+	 *            {@link #beginIterate()}返回的连接
+	 * @param owner
+	 *            调用{@link #beginIterate()}的线程
+	 */
+	void endIterate(SQLiteDatabase database, Thread owner) {
+		final boolean reader;
+		synchronized (this) {
+			reader = database != mDatabase;
+			if (!reader) {
+				final Integer count = mIterators.get(owner);
+				if (count == null || count == 1)
+					mIterators.remove(owner);
+				else
+					mIterators.put(owner, count - 1);
+				if (mIterators.isEmpty())
+					notifyAll();
+			}
+		}
+		if (reader)
+			endRead(database);
+		else
+			release();
+	}
+
+	/**
+	 * WAL模式下从只读连接池获取连接 <br>
+	 * 持有写锁的线程改为读取写连接, 可以看到当前事务中未提交的修改
+	 *
+	 * @return 不处于WAL模式或当前线程持有写锁时返回null
+	 */
+	private SQLiteDatabase beginPooledRead() {
+		if (!mWriteAheadLogging || mLock.isWriteLockedByCurrentThread())
+			return null;
+		acquire();
+		// 重新打开连接时可能无法恢复WAL模式
+		if (!mWriteAheadLogging) {
+			release();
+			return null;
+		}
+		try {
+			return obtainReader();
+		} catch (RuntimeException e) {
+			release();
+			throw e;
+		}
+	}
+
+	private SQLiteDatabase obtainReader() {
+		mReaderPermits.acquireUninterruptibly();
+		try {
+			synchronized (this) {
+				SQLiteDatabase reader = mReaders.poll();
+				while (reader != null && !reader.isOpen())
+					reader = mReaders.poll();
+				if (reader == null) {
+					reader = SQLiteDatabase.openDatabase(Broid.getApplication().getDatabasePath(mDatabaseName).getPath(), null,
+							SQLiteDatabase.OPEN_READONLY);
+					Log.d(Broid.TAG, mDatabaseName + " open a read only connection", null);
+				}
+				return reader;
+			}
+		} catch (RuntimeException e) {
+			mReaderPermits.release();
+			throw e;
+		}
+	}
+
+	private void recycleReader(SQLiteDatabase reader) {
+		synchronized (this) {
+			if (reader.isOpen())
+				mReaders.add(reader);
+		}
+		mReaderPermits.release();
+	}
+
+	/**
+	 * 获取写锁并获取数据库连接, 必须对应一次{@link #endWrite()} <br>
+	 * 持有读锁的线程不能再获取写锁, 否则会造成死锁
+	 *
+	 * @return 已打开的数据库连接
+	 */
+	SQLiteDatabase beginWrite() {
+		if (mLock.getReadHoldCount() > 0)
+			throw new DaoException("can not write " + mDatabaseName + " while reading it in the same thread");
+		synchronized (this) {
+			if (mIterators.containsKey(Thread.currentThread()))
+				throw new DaoException("can not write " + mDatabaseName + " while iterating it in the same thread");
+		}
+		lockWrite();
+		try {
+			return acquire();
+		} catch (RuntimeException e) {
+			mLock.writeLock().unlock();
+			throw e;
+		}
+	}
+
+	/**
+	 * 获取写锁, 最外层的写操作还需等待其他线程打开的迭代器全部关闭 <br>
+	 * 等待期间不持有写锁, 迭代中的线程仍可以继续读
+	 */
+	private void lockWrite() {
+		boolean interrupted = false;
+		while (true) {
+			mLock.writeLock().lock();
+			if (mLock.getWriteHoldCount() > 1)
+				break;
+			synchronized (this) {
+				if (mIterators.isEmpty())
+					break;
+			}
+			mLock.writeLock().unlock();
+			synchronized (this) {
+				while (!mIterators.isEmpty()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	void endWrite() {
+		try {
+			release();
+		} finally {
+			mLock.writeLock().unlock();
+		}
+		if (mWriteAheadLogging && mLock.getWriteHoldCount() == 0)
+			scheduleCheckpoint();
+	}
+
+	/**
+	 * 获取写连接上缓存的预编译语句, 只能在{@link #beginWrite()}与{@link #endWrite()}之间调用 <br>
+	 * 返回的语句已清空绑定参数
+	 *
+	 * @param database
+	 *            {@link #beginWrite()}返回的连接
+	 * @param sql
+	 * @return 预编译语句
+	 */
+	SQLiteStatement compileStatement(SQLiteDatabase database, String sql) {
+		SQLiteStatement statement = mStatements.get(sql);
+		if (statement == null) {
+			statement = database.compileStatement(sql);
+			mStatements.put(sql, statement);
+		} else
+			statement.clearBindings();
+		return statement;
+	}
+
+	/**
+	 * 获取上次验证通过的表结构 同一连接上只在第一次调用时读取, 只能在{@link #beginWrite()}与{@link #endWrite()}之间调用
+	 *
+	 * @param database
+	 *            {@link #beginWrite()}返回的连接
+	 * @param tableName
+	 * @return 指纹与自增主键名, 不存在时返回null
+	 */
+	synchronized String[] getSchema(SQLiteDatabase database, String tableName) {
+		if (mSchemas == null) {
+			HashMap<String, String[]> schemas = new HashMap<String, String[]>();
+			database.execSQL("CREATE TABLE IF NOT EXISTS " + SCHEMA_TABLE + " (name TEXT PRIMARY KEY, fingerprint TEXT, auto_key TEXT)");
+			Cursor cursor = database.rawQuery("SELECT name, fingerprint, auto_key FROM " + SCHEMA_TABLE, null);
+			try {
+				while (cursor.moveToNext()) {
+					schemas.put(cursor.getString(0), new String[] { cursor.getString(1), cursor.getString(2) });
+				}
+			} finally {
+				cursor.close();
+			}
+			mSchemas = schemas;
+		}
+		return mSchemas.get(tableName);
+	}
+
+	/**
+	 * 记录验证通过的表结构 只能在{@link #getSchema(SQLiteDatabase, String)}之后调用
+	 *
+	 * @param database
+	 * @param tableName
+	 * @param fingerprint
+	 * @param autoKey
+	 *            自增主键名 可以为null
+	 */
+	synchronized void putSchema(SQLiteDatabase database, String tableName, String fingerprint, String autoKey) {
+		database.execSQL("INSERT OR REPLACE INTO " + SCHEMA_TABLE + " (name, fingerprint, auto_key) VALUES (?,?,?)", new Object[] { tableName,
+				fingerprint, autoKey });
+		if (mSchemas != null)
+			mSchemas.put(tableName, new String[] { fingerprint, autoKey });
+	}
+
+	/**
+	 * 将整个数据库备份为一个一致的快照 <br>
+	 * 在单独的连接上打开备份文件, 将数据库以ATTACH的方式只读, 不会改变数据库的日志模式 <br>
+	 * 所有表, 索引与自增序列在一个SAVEPOINT中复制, 数据库上只有一个延迟的读事务 <br>
+	 * WAL模式下占用一个读连接的名额, 备份期间不阻塞写操作; 否则持有读锁, 写操作等待备份结束
+	 *
+	 * @param target
+	 *            备份文件 先写入临时文件, 完成后替换
+	 * @return 是否备份成功
+	 */
+	boolean backup(File target) {
+		final File temp = new File(target.getPath() + "-tmp");
+		temp.delete();
+		new File(temp.getPath() + "-journal").delete();
+		final boolean locked = !mWriteAheadLogging;
+		if (locked)
+			mLock.readLock().lock();
+		else
+			mReaderPermits.acquireUninterruptibly();
+		SQLiteDatabase connection = null;
+		boolean result = false;
+		try {
+			acquire();
+			try {
+				connection = SQLiteDatabase.openDatabase(temp.getPath(), null, SQLiteDatabase.OPEN_READWRITE
+						| SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+				connection.execSQL("ATTACH DATABASE ? AS source", new Object[] { Broid.getApplication().getDatabasePath(mDatabaseName)
+						.getPath() });
+				// BEGIN在API 16以上会被改为排他事务, SAVEPOINT开始的是延迟事务, 失败时关闭连接即回滚
+				connection.execSQL("SAVEPOINT backup");
+				copy(connection);
+				connection.execSQL("RELEASE backup");
+				connection.execSQL("DETACH DATABASE source");
+				result = true;
+			} finally {
+				if (connection != null)
+					connection.close();
+				release();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, mDatabaseName + " backup fail", e);
+		} finally {
+			if (locked)
+				mLock.readLock().unlock();
+			else
+				mReaderPermits.release();
+		}
+		if (result) {
+			target.delete();
+			result = temp.renameTo(target);
+		}
+		if (!result) {
+			temp.delete();
+			new File(temp.getPath() + "-journal").delete();
+		} else
+			Log.d(Broid.TAG, mDatabaseName + " backup to " + target.getPath(), null);
+		return result;
+	}
+
+	/**
+	 * 先建表并复制数据, 再建索引, 视图与触发器, 最后复制自增序列 <br>
+	 * 建表语句原样在备份文件(main)中执行
+	 */
+	private static void copy(SQLiteDatabase connection) {
+		ArrayList<String> tables = new ArrayList<String>();
+		ArrayList<String> others = new ArrayList<String>();
+		Cursor cursor = connection.rawQuery(
+				"SELECT type, name, sql FROM source.sqlite_master WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%'", null);
+		try {
+			while (cursor.moveToNext()) {
+				if ("table".equals(cursor.getString(0))) {
+					connection.execSQL(cursor.getString(2));
+					tables.add(cursor.getString(1));
+				} else
+					others.add(cursor.getString(2));
+			}
+		} finally {
+			cursor.close();
+		}
+		for (String table : tables) {
+			connection.execSQL("INSERT INTO main.\"" + table + "\" SELECT * FROM source.\"" + table + '"');
+		}
+		for (String sql : others) {
+			connection.execSQL(sql);
+		}
+		cursor = connection.rawQuery("SELECT 1 FROM main.sqlite_master WHERE name='sqlite_sequence'", null);
+		try {
+			if (!cursor.moveToFirst())
+				return;
+		} finally {
+			cursor.close();
+		}
+		connection.execSQL("DELETE FROM main.sqlite_sequence");
+		connection.execSQL("INSERT INTO main.sqlite_sequence SELECT * FROM source.sqlite_sequence");
+	}
+
+	private synchronized void scheduleCheckpoint() {
+		if (!mCheckpointPending) {
+			mCheckpointPending = true;
+			getScheduler().schedule(mCheckpointTask, CHECKPOINT_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 在写操作的间隙执行PASSIVE checkpoint, 不阻塞读操作 <br>
+	 * 写锁被占用时顺延, 连接已关闭时不执行(关闭连接时SQLite会自行checkpoint)
+	 */
+	private void checkpoint() {
+		synchronized (this) {
+			mCheckpointPending = false;
+		}
+		if (!mLock.writeLock().tryLock()) {
+			scheduleCheckpoint();
+			return;
+		}
+		try {
+			SQLiteDatabase database;
+			synchronized (this) {
+				if (mDatabase == null || !mDatabase.isOpen())
+					return;
+				database = acquire();
+			}
+			try {
+				pragma(database, "PRAGMA wal_checkpoint(PASSIVE)");
+			} finally {
+				release();
+			}
+		} catch (Exception e) {
+			Log.w(Broid.TAG, mDatabaseName + " checkpoint fail", e);
+		} finally {
+			mLock.writeLock().unlock();
+		}
+	}
+
+	private synchronized void closeIfIdle() {
+		mCloseFuture = null;
+		if (mReferenceCount == 0 && mDatabase != null) {
+			Iterator<SQLiteStatement> iterator = mStatements.values().iterator();
+			while (iterator.hasNext())
+				iterator.next().close();
+			mStatements.clear();
+			while (!mReaders.isEmpty())
+				mReaders.poll().close();
+			mDatabase.close();
+			mDatabase = null;
+			mSchemas = null;
+			Log.d(Broid.TAG, mDatabaseName + " close", null);
+		}
+	}
+
+	private static String pragma(SQLiteDatabase database, String sql) {
+		Cursor cursor = database.rawQuery(sql, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getString(0) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+}
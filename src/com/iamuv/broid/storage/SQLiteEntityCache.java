@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * 按主键缓存实体 超出数量上限时淘汰最久未访问的实体 <br>
+ * 每次失效都会增加版本号, 查询前记录版本号, 版本号变化时不缓存查询结果, 避免与写操作并发时缓存旧数据
+ *
+ * @param <T>
+ *            表的映射类
+ */
+final class SQLiteEntityCache<T> {
+
+	private final LinkedHashMap<Long, T> mEntries;
+
+	private volatile int mMaxSize;
+
+	private long mVersion;
+
+	private long mHitCount;
+
+	private long mMissCount;
+
+	SQLiteEntityCache(int maxSize) {
+		mMaxSize = maxSize;
+		mEntries = new LinkedHashMap<Long, T>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Long, T> eldest) {
+				return size() > mMaxSize;
+			}
+		};
+	}
+
+	boolean isEnabled() {
+		return mMaxSize > 0;
+	}
+
+	synchronized void setMaxSize(int maxSize) {
+		mMaxSize = maxSize < 0 ? 0 : maxSize;
+		if (mMaxSize == 0) {
+			mEntries.clear();
+			return;
+		}
+		while (mEntries.size() > mMaxSize) {
+			mEntries.remove(mEntries.keySet().iterator().next());
+		}
+	}
+
+	synchronized T get(long key) {
+		T value = mEntries.get(key);
+		if (value != null)
+			mHitCount++;
+		else
+			mMissCount++;
+		return value;
+	}
+
+	synchronized long getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * @param version
+	 *            查询前通过{@link #getVersion()}获取的版本号
+	 */
+	synchronized void put(long key, T value, long version) {
+		if (version == mVersion && mMaxSize > 0)
+			mEntries.put(key, value);
+	}
+
+	synchronized void remove(long key) {
+		mVersion++;
+		mEntries.remove(key);
+	}
+
+	synchronized void clear() {
+		mVersion++;
+		mEntries.clear();
+	}
+
+	synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+import com.iamuv.broid.utils.SystemUtils;
+
+/**
+ * 异步数据库操作的线程池 <br>
+ * <ul>
+ * <li>读操作使用固定大小的线程池, 线程数与读连接数相同</li>
+ * <li>每个数据库的写操作使用各自的单线程队列, 写操作在同一数据库中本就串行, 排队执行避免占用读线程等待写锁, 不同数据库的写操作互不等待</li>
+ * <li>与数据库无关的后台任务, 例如创建PreferencesDao, 使用单独的单线程队列</li>
+ * <li>线程空闲一段时间后自动回收</li>
+ * </ul>
+ */
+final class SQLiteExecutor {
+
+	private static final long KEEP_ALIVE_TIME = 30;
+
+	private static ThreadPoolExecutor READ_EXECUTOR;
+
+	/**
+	 * 以数据库名区分的写线程 第一次写入时创建
+	 */
+	private static final HashMap<String, ThreadPoolExecutor> WRITE_EXECUTORS = new HashMap<String, ThreadPoolExecutor>();
+
+	private static ThreadPoolExecutor BACKGROUND_EXECUTOR;
+
+	private static ScheduledThreadPoolExecutor SCHEDULER;
+
+	private SQLiteExecutor() {}
+
+	private static synchronized ThreadPoolExecutor getReadExecutor() {
+		if (READ_EXECUTOR == null) {
+			int size = SystemUtils.getDefaultThreadPoolSize(4);
+			Log.i(Broid.TAG, "the sqlite read pool size is " + size, null);
+			READ_EXECUTOR = newExecutor(size, "sqlite read thread #");
+		}
+		return READ_EXECUTOR;
+	}
+
+	private static synchronized ThreadPoolExecutor getWriteExecutor(String database) {
+		ThreadPoolExecutor executor = WRITE_EXECUTORS.get(database);
+		if (executor == null) {
+			executor = newExecutor(1, "sqlite write thread " + database + " #");
+			WRITE_EXECUTORS.put(database, executor);
+		}
+		return executor;
+	}
+
+	private static synchronized ThreadPoolExecutor getBackgroundExecutor() {
+		if (BACKGROUND_EXECUTOR == null)
+			BACKGROUND_EXECUTOR = newExecutor(1, "broid background thread #");
+		return BACKGROUND_EXECUTOR;
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+		if (SCHEDULER == null) {
+			SCHEDULER = new ScheduledThreadPoolExecutor(1, new SQLiteThreadFactory("sqlite delay thread #"));
+			SCHEDULER.setKeepAliveTime(KEEP_ALIVE_TIME, TimeUnit.SECONDS);
+			SCHEDULER.allowCoreThreadTimeOut(true);
+		}
+		return SCHEDULER;
+	}
+
+	private static ThreadPoolExecutor newExecutor(int size, String name) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new SQLiteThreadFactory(name));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * 提交读操作
+	 *
+	 * @param callable
+	 * @param callback
+	 *            可以为null
+	 * @return
+	 */
+	static <Result> Future<Result> read(Callable<Result> callable, SQLiteCallback<Result> callback) {
+		SQLiteTask<Result> task = new SQLiteTask<Result>(callable, callback);
+		getReadExecutor().execute(task);
+		return task;
+	}
+
+	/**
+	 * 提交写操作 同一数据库的写操作按提交顺序执行
+	 *
+	 * @param manager
+	 *            写入的数据库
+	 * @param callable
+	 * @param callback
+	 *            可以为null
+	 * @return
+	 */
+	static <Result> Future<Result> write(SQLiteDatabaseManager manager, Callable<Result> callable, SQLiteCallback<Result> callback) {
+		SQLiteTask<Result> task = new SQLiteTask<Result>(callable, callback);
+		getWriteExecutor(manager.getDatabaseName()).execute(task);
+		return task;
+	}
+
+	/**
+	 * 提交不访问数据库的后台任务 按提交顺序执行, 不占用读写线程
+	 *
+	 * @param callable
+	 * @param callback
+	 *            可以为null
+	 * @return
+	 */
+	static <Result> Future<Result> background(Callable<Result> callable, SQLiteCallback<Result> callback) {
+		SQLiteTask<Result> task = new SQLiteTask<Result>(callable, callback);
+		getBackgroundExecutor().execute(task);
+		return task;
+	}
+
+	/**
+	 * 延迟执行 任务应尽快返回, 数据库操作需提交到读写线程池
+	 *
+	 * @param runnable
+	 * @param delay
+	 *            单位毫秒
+	 * @return
+	 */
+	static ScheduledFuture<?> schedule(Runnable runnable, long delay) {
+		return getScheduler().schedule(runnable, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static class SQLiteTask<Result> extends FutureTask<Result> {
+
+		private final SQLiteCallback<Result> mCallback;
+
+		SQLiteTask(Callable<Result> callable, SQLiteCallback<Result> callback) {
+			super(callable);
+			mCallback = callback;
+		}
+
+		@Override
+		protected void done() {
+			Result result;
+			try {
+				result = get();
+			} catch (CancellationException e) {
+				if (mCallback != null)
+					mCallback.cancel();
+				return;
+			} catch (ExecutionException e) {
+				Log.w(Broid.TAG, null, e.getCause());
+				if (mCallback != null)
+					mCallback.error(e.getCause());
+				return;
+			} catch (InterruptedException e) {
+				if (mCallback != null)
+					mCallback.cancel();
+				return;
+			}
+			if (mCallback != null)
+				mCallback.complete(result);
+		}
+	}
+
+	private static class SQLiteThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger mCount = new AtomicInteger(1);
+
+		private final String mName;
+
+		SQLiteThreadFactory(String name) {
+			mName = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, mName + mCount.getAndIncrement());
+			thread.setDaemon(true);
+			Log.d(Broid.TAG, thread.getName() + " create", null);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * 逐行读取查询结果, 每次只映射cursor当前行 <br>
+ * <ul>
+ * <li>打开期间占用数据库的读连接, 使用完毕必须调用{@link #close()}, 遍历到最后一行后自动关闭</li>
+ * <li>打开期间打开它的线程不能对同一数据库进行写操作, 其他线程的写操作等待其关闭</li>
+ * <li>可以在打开它的线程之外遍历与关闭, 例如交给异步回调处理</li>
+ * <li>复用实例时每次返回同一个对象, 值为null的字段会保留上一行的值</li>
+ * </ul>
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class SQLiteIterator<T> implements Iterator<T>, Closeable {
+
+	private final SQLiteDatabaseManager mManager;
+
+	private SQLiteDatabase mDatabase;
+
+	private final Thread mOwner;
+
+	private Cursor mCursor;
+
+	private final SQLiteMapper<T> mMapper;
+
+	private final int[] mIndexes;
+
+	private final T mInstance;
+
+	private boolean mMoved;
+
+	private boolean mHasNext;
+
+	/**
+	 * @param manager
+	 * @param database
+	 *            已通过manager的beginIterate获得的连接, 为null时返回空结果
+	 * @param cursor
+	 * @param mapper
+	 * @param indexes
+	 * @param reuse
+	 *            是否复用实例
+	 */
+	SQLiteIterator(SQLiteDatabaseManager manager, SQLiteDatabase database, Cursor cursor, SQLiteMapper<T> mapper, int[] indexes, boolean reuse) {
+		mManager = manager;
+		mDatabase = database;
+		mOwner = Thread.currentThread();
+		mCursor = cursor;
+		mMapper = mapper;
+		mIndexes = indexes;
+		mInstance = reuse && cursor != null ? mapper.newInstance() : null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!mMoved) {
+			mHasNext = mCursor != null && mCursor.moveToNext();
+			mMoved = true;
+			if (!mHasNext)
+				close();
+		}
+		return mHasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		mMoved = false;
+		T result = mInstance != null ? mInstance : mMapper.newInstance();
+		mMapper.read(mCursor, mIndexes, result);
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return 结果总行数
+	 */
+	public int getCount() {
+		return mCursor == null ? 0 : mCursor.getCount();
+	}
+
+	/**
+	 * 关闭cursor并释放数据库连接 可以重复调用
+	 */
+	@Override
+	public void close() {
+		mMoved = true;
+		mHasNext = false;
+		if (mDatabase == null)
+			return;
+		try {
+			if (!mCursor.isClosed())
+				mCursor.close();
+		} finally {
+			mCursor = null;
+			mManager.endIterate(mDatabase, mOwner);
+			mDatabase = null;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * 表的映射类与数据库字段之间的映射 <br>
+ * 由broid-processor在编译期为每个{@link com.iamuv.broid.annotation.Table}类生成, 类名为映射类的类名加{@link #SUFFIX}, 直接访问属性, 不使用反射 <br>
+ * 找不到生成的映射时SQLiteDao使用反射映射
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public interface SQLiteMapper<T> {
+
+	public static final String SUFFIX = "_SQLiteMapper";
+
+	/**
+	 * @return 映射的字段名, 其顺序即为其他方法中column的顺序
+	 */
+	public String[] getColumns();
+
+	/**
+	 * @return 表名, 反射映射返回null
+	 */
+	public String getTableName();
+
+	/**
+	 * @return 自增主键的字段名, 没有自增主键时返回null
+	 */
+	public String getAutoKey();
+
+	/**
+	 * @return 预先生成的insert语句, 反射映射返回null
+	 */
+	public String getInsertSQL();
+
+	/**
+	 * @return 预先生成的按主键update语句, 反射映射或没有自增主键时返回null
+	 */
+	public String getUpdateSQL();
+
+	/**
+	 * @return 预先生成的按主键delete语句, 反射映射或没有自增主键时返回null
+	 */
+	public String getDeleteSQL();
+
+	public T newInstance();
+
+	/**
+	 * 按{@link #getColumns()}的顺序绑定所有字段
+	 *
+	 * @param statement
+	 * @param index
+	 *            第一个绑定参数的位置
+	 * @param c
+	 * @param skip
+	 *            跳过的column, 不跳过时为-1
+	 * @return 下一个绑定参数的位置
+	 */
+	public int bind(SQLiteStatement statement, int index, T c, int skip);
+
+	/**
+	 * 绑定单个字段
+	 */
+	public void bindColumn(SQLiteStatement statement, int index, int column, T c);
+
+	/**
+	 * 从cursor当前行读取数据
+	 *
+	 * @param cursor
+	 * @param indexes
+	 *            与{@link #getColumns()}一一对应的cursor字段位置, -1表示不读取
+	 * @param c
+	 */
+	public void read(Cursor cursor, int[] indexes, T c);
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+import android.os.Handler;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+
+/**
+ * 观察SQLiteDao的查询结果 通过{@link SQLiteDao#observe(String, Object[], String, SQLiteObserver)}注册 <br>
+ * <ul>
+ * <li>只有通过同一个SQLiteDao写入表后才重新查询, 延迟时间内的连续写入合并为一次查询</li>
+ * <li>结果没有变化时不回调, 回调在注册线程中执行, 注册线程没有Looper时在读线程中执行</li>
+ * <li>逐行比较字段值计算插入, 更新与删除的行</li>
+ * </ul>
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public abstract class SQLiteObserver<T> {
+
+	private final Handler mHandler;
+
+	private SQLiteDao<T> mDao;
+
+	private String mSelection;
+
+	private Object[] mSelectionArgs;
+
+	private String mOrderBy;
+
+	private volatile long mDelay = 100;
+
+	private volatile boolean mCancelled;
+
+	private boolean mPending;
+
+	/**
+	 * 上一次查询结果中每一行的字段值
+	 */
+	private HashMap<Long, String> mRows;
+
+	private final Runnable mDelayTask = new Runnable() {
+
+		@Override
+		public void run() {
+			SQLiteExecutor.read(mQueryTask, null);
+		}
+	};
+
+	private final Callable<Void> mQueryTask = new Callable<Void>() {
+
+		@Override
+		public Void call() throws Exception {
+			synchronized (SQLiteObserver.this) {
+				mPending = false;
+			}
+			refresh();
+			return null;
+		}
+	};
+
+	public SQLiteObserver() {
+		mHandler = SQLiteCallback.currentHandler();
+	}
+
+	/**
+	 * 查询结果变化时回调
+	 */
+	protected abstract void onChange(SQLiteChange<T> change);
+
+	/**
+	 * @param delay
+	 *            写入后重新查询前的等待时间 单位毫秒 默认100
+	 */
+	public void setDelay(long delay) {
+		mDelay = delay < 0 ? 0 : delay;
+	}
+
+	/**
+	 * 停止观察
+	 */
+	public void cancel() {
+		mCancelled = true;
+		SQLiteDao<T> dao = mDao;
+		if (dao != null)
+			dao.unobserve(this);
+	}
+
+	synchronized void attach(SQLiteDao<T> dao, String selection, Object[] selectionArgs, String orderBy) {
+		if (mDao != null)
+			throw new DaoException("the observer has been registered");
+		mDao = dao;
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mOrderBy = orderBy;
+		mPending = true;
+	}
+
+	/**
+	 * 注册到SQLiteDao后执行首次查询
+	 */
+	void start() {
+		SQLiteExecutor.read(mQueryTask, null);
+	}
+
+	/**
+	 * 表被写入后调用 延迟时间内只会安排一次查询
+	 */
+	synchronized void notifyChanged() {
+		if (mPending || mCancelled)
+			return;
+		mPending = true;
+		SQLiteExecutor.schedule(mDelayTask, mDelay);
+	}
+
+	private void refresh() {
+		if (mCancelled)
+			return;
+		final ArrayList<T> items = new ArrayList<T>();
+		final ArrayList<Long> keys = new ArrayList<Long>();
+		final ArrayList<String> values = new ArrayList<String>();
+		SQLiteChange<T> change;
+		// 同一时间只有一次查询在计算差异, 保证按写入顺序回调
+		synchronized (mQueryTask) {
+			try {
+				mDao.observeQuery(mSelection, mSelectionArgs, mOrderBy, items, keys, values);
+			} catch (Exception e) {
+				Log.w(Broid.TAG, null, e);
+				return;
+			}
+			change = new SQLiteChange<T>(items);
+			final int size = keys.size();
+			HashMap<Long, String> rows = new HashMap<Long, String>(size * 4 / 3 + 1);
+			Long key;
+			String previous;
+			for (int i = 0; i < size; i++) {
+				key = keys.get(i);
+				rows.put(key, values.get(i));
+				previous = mRows == null ? null : mRows.remove(key);
+				if (previous == null)
+					change.mInserted.add(key);
+				else if (!previous.equals(values.get(i)))
+					change.mUpdated.add(key);
+			}
+			final boolean first = mRows == null;
+			if (!first)
+				change.mRemoved.addAll(mRows.keySet());
+			mRows = rows;
+			if (!first && change.isEmpty())
+				return;
+			deliver(change);
+		}
+	}
+
+	private void deliver(final SQLiteChange<T> change) {
+		Runnable runnable = new Runnable() {
+
+			@Override
+			public void run() {
+				if (!mCancelled)
+					onChange(change);
+			}
+		};
+		if (mHandler != null)
+			mHandler.post(runnable);
+		else {
+			try {
+				runnable.run();
+			} catch (Exception e) {
+				Log.w(Broid.TAG, null, e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+
+/**
+ * 按字段值分页的一页数据 <br>
+ * 保存了查询条件与本页最后一行的位置, 通过{@link SQLiteDao#getNextPage(SQLitePage)}获取下一页, 每一页的查询耗时与页数无关
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class SQLitePage<T> {
+
+	final String mSelection;
+
+	final Object[] mSelectionArgs;
+
+	final String mColumn;
+
+	final boolean mDesc;
+
+	/**
+	 * 分页字段不唯一时以ROWID区分相同值的行
+	 */
+	final boolean mTieBreak;
+
+	final int mSize;
+
+	final boolean mAnchored;
+
+	final Object mAfterKey;
+
+	final long mAfterRowId;
+
+	final ArrayList<T> mItems = new ArrayList<T>();
+
+	boolean mHasMore;
+
+	/**
+	 * 按分页字段的类型保存 Long, Double, byte[]或String
+	 */
+	Object mLastKey;
+
+	long mLastRowId;
+
+	SQLitePage(String selection, Object[] selectionArgs, String column, boolean desc, boolean tieBreak, int size) {
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mColumn = column;
+		mDesc = desc;
+		mTieBreak = tieBreak;
+		mSize = size;
+		mAnchored = false;
+		mAfterKey = null;
+		mAfterRowId = 0;
+	}
+
+	SQLitePage(SQLitePage<T> previous) {
+		mSelection = previous.mSelection;
+		mSelectionArgs = previous.mSelectionArgs;
+		mColumn = previous.mColumn;
+		mDesc = previous.mDesc;
+		mTieBreak = previous.mTieBreak;
+		mSize = previous.mSize;
+		mAnchored = true;
+		mAfterKey = previous.mLastKey;
+		mAfterRowId = previous.mLastRowId;
+	}
+
+	/**
+	 * @return 本页数据
+	 */
+	public ArrayList<T> getItems() {
+		return mItems;
+	}
+
+	/**
+	 * @return 是否还有下一页
+	 */
+	public boolean hasMore() {
+		return mHasMore;
+	}
+
+	/**
+	 * @return 本页最后一行的分页字段值 BLOB字段返回null
+	 */
+	public String getLastKey() {
+		return mLastKey == null || mLastKey instanceof byte[] ? null : String.valueOf(mLastKey);
+	}
+
+}
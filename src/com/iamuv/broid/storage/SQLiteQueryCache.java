@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 缓存查询结果 超出数量上限时淘汰最久未访问的结果 <br>
+ * 每个结果记录查询前的表版本号, 表版本号在每次写操作后增加, 版本号不一致的结果视为失效
+ *
+ * @param <T>
+ *            表的映射类
+ */
+final class SQLiteQueryCache<T> {
+
+	private final LinkedHashMap<String, Result<T>> mResults = new LinkedHashMap<String, Result<T>>(16, 0.75f, true);
+
+	private volatile int mMaxSize;
+
+	private int mMaxRows;
+
+	private int mRows;
+
+	private long mHitCount;
+
+	private long mMissCount;
+
+	boolean isEnabled() {
+		return mMaxSize > 0;
+	}
+
+	/**
+	 * @param maxSize
+	 *            缓存的查询数量上限 为0时不缓存
+	 * @param maxRows
+	 *            所有查询结果的总行数上限
+	 */
+	synchronized void setMaxSize(int maxSize, int maxRows) {
+		mMaxSize = maxSize < 0 ? 0 : maxSize;
+		mMaxRows = maxRows < 0 ? 0 : maxRows;
+		trim();
+	}
+
+	/**
+	 * @param key
+	 * @param version
+	 *            当前的表版本号
+	 * @return 不存在或已失效时返回null
+	 */
+	synchronized ArrayList<T> get(String key, long version) {
+		Result<T> result = mResults.get(key);
+		if (result != null && result.mVersion != version) {
+			mResults.remove(key);
+			mRows -= result.mItems.size();
+			result = null;
+		}
+		if (result == null) {
+			mMissCount++;
+			return null;
+		}
+		mHitCount++;
+		return result.mItems;
+	}
+
+	/**
+	 * @param key
+	 * @param items
+	 *            不再修改的查询结果
+	 * @param version
+	 *            查询前的表版本号
+	 */
+	synchronized void put(String key, ArrayList<T> items, long version) {
+		if (mMaxSize == 0 || items.size() > mMaxRows)
+			return;
+		Result<T> previous = mResults.put(key, new Result<T>(items, version));
+		if (previous != null)
+			mRows -= previous.mItems.size();
+		mRows += items.size();
+		trim();
+	}
+
+	synchronized void clear() {
+		mResults.clear();
+		mRows = 0;
+	}
+
+	private void trim() {
+		Iterator<Result<T>> iterator = mResults.values().iterator();
+		while (iterator.hasNext() && (mResults.size() > mMaxSize || mRows > mMaxRows)) {
+			mRows -= iterator.next().mItems.size();
+			iterator.remove();
+		}
+	}
+
+	synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	private static class Result<T> {
+
+		final ArrayList<T> mItems;
+
+		final long mVersion;
+
+		Result(ArrayList<T> items, long version) {
+			mItems = items;
+			mVersion = version;
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+
+/**
+ * 按映射类字段构造查询 通过{@link SQLiteDao#select()}获取 <br>
+ * <ul>
+ * <li>字段在构造时检查, 不存在的字段抛出{@link DaoException}</li>
+ * <li>条件值按类型绑定, Date以毫秒数, boolean以0或1绑定</li>
+ * <li>构造完成后SQL语句不再变化, 可以保存实例并通过{@link #get(Object...)}以新的条件值重复查询, 重用数据库缓存的预编译语句</li>
+ * <li>构造过程不是线程安全的, 构造完成后可以在多个线程中查询</li>
+ * </ul>
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class SQLiteSelect<T> {
+
+	private final SQLiteDao<T> mDao;
+
+	private final StringBuilder mWhere = new StringBuilder();
+
+	private final ArrayList<Object> mValues = new ArrayList<Object>();
+
+	private final StringBuilder mOrderBy = new StringBuilder();
+
+	private String mLimit;
+
+	private volatile String mSelection;
+
+	SQLiteSelect(SQLiteDao<T> dao) {
+		mDao = dao;
+	}
+
+	public SQLiteSelect<T> eq(String column, Object value) {
+		return where(column, "=?", value);
+	}
+
+	public SQLiteSelect<T> ne(String column, Object value) {
+		return where(column, "<>?", value);
+	}
+
+	public SQLiteSelect<T> lt(String column, Object value) {
+		return where(column, "<?", value);
+	}
+
+	public SQLiteSelect<T> le(String column, Object value) {
+		return where(column, "<=?", value);
+	}
+
+	public SQLiteSelect<T> gt(String column, Object value) {
+		return where(column, ">?", value);
+	}
+
+	public SQLiteSelect<T> ge(String column, Object value) {
+		return where(column, ">=?", value);
+	}
+
+	/**
+	 * @param pattern
+	 *            %匹配任意字符, _匹配单个字符
+	 */
+	public SQLiteSelect<T> like(String column, String pattern) {
+		return where(column, " LIKE ?", pattern);
+	}
+
+	public SQLiteSelect<T> isNull(String column) {
+		appendWhere(column).append(" IS NULL");
+		return this;
+	}
+
+	public SQLiteSelect<T> notNull(String column) {
+		appendWhere(column).append(" IS NOT NULL");
+		return this;
+	}
+
+	/**
+	 * 字段值在列表中 列表长度是语句的一部分, 重复查询时条件值数量需一致
+	 * 
+	 * @param column
+	 * @param values
+	 *            为空时没有结果
+	 */
+	public SQLiteSelect<T> in(String column, Object... values) {
+		if (values == null || values.length == 0) {
+			appendWhere(column).append(" IN ()");
+			return this;
+		}
+		StringBuilder where = appendWhere(column).append(" IN (");
+		for (int i = 0; i < values.length; i++) {
+			where.append(i > 0 ? ",?" : "?");
+			mValues.add(values[i]);
+		}
+		where.append(')');
+		return this;
+	}
+
+	public SQLiteSelect<T> orderBy(String column) {
+		return order(column, false);
+	}
+
+	public SQLiteSelect<T> orderByDesc(String column) {
+		return order(column, true);
+	}
+
+	public SQLiteSelect<T> limit(int count) {
+		mLimit = String.valueOf(count);
+		return this;
+	}
+
+	public SQLiteSelect<T> limit(int offset, int count) {
+		mLimit = offset + "," + count;
+		return this;
+	}
+
+	private SQLiteSelect<T> where(String column, String operator, Object value) {
+		appendWhere(column).append(operator);
+		mValues.add(value);
+		return this;
+	}
+
+	private StringBuilder appendWhere(String column) {
+		check(column);
+		mSelection = null;
+		if (mWhere.length() > 0)
+			mWhere.append(" AND ");
+		return mWhere.append(column);
+	}
+
+	private SQLiteSelect<T> order(String column, boolean desc) {
+		check(column);
+		if (mOrderBy.length() > 0)
+			mOrderBy.append(',');
+		mOrderBy.append(column).append(desc ? " DESC" : " ASC");
+		return this;
+	}
+
+	private void check(String column) {
+		if (!mDao.checkColumns(new String[] { column }))
+			throw new DaoException("table " + mDao.mTableName + " do not have the column " + column);
+	}
+
+	private String getSelection() {
+		String selection = mSelection;
+		if (selection == null)
+			mSelection = selection = mWhere.length() == 0 ? null : mWhere.toString();
+		return selection;
+	}
+
+	private String getOrderBy() {
+		return mOrderBy.length() == 0 ? null : mOrderBy.toString();
+	}
+
+	/**
+	 * 以构造时的条件值查询
+	 */
+	public ArrayList<T> get() {
+		return mDao.select(getSelection(), mValues.toArray(), getOrderBy(), mLimit);
+	}
+
+	/**
+	 * 以新的条件值查询 语句不变
+	 * 
+	 * @param values
+	 *            按条件的构造顺序排列, 数量需与构造时一致
+	 */
+	public ArrayList<T> get(Object... values) {
+		return mDao.select(getSelection(), checkValues(values), getOrderBy(), mLimit);
+	}
+
+	/**
+	 * @return 第一条数据 没有数据时返回null
+	 */
+	public T first() {
+		ArrayList<T> results = mDao.select(getSelection(), mValues.toArray(), getOrderBy(), "1");
+		return results.isEmpty() ? null : results.get(0);
+	}
+
+	public long count() {
+		return mDao.selectCount(getSelection(), mValues.toArray());
+	}
+
+	public boolean exists() {
+		return mDao.selectExists(getSelection(), mValues.toArray());
+	}
+
+	private Object[] checkValues(Object[] values) {
+		final int size = mValues.size();
+		if (values == null ? size != 0 : values.length != size)
+			throw new DaoException("the query needs " + size + " values");
+		return values;
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.Date;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * SQLiteDao的存储格式 <br>
+ * 非基本数值类型的属性都通过此类写入与读取, 反射映射与编译期生成的映射共用同一套规则 <br>
+ * int, long, short, float, double直接使用SQLiteStatement与Cursor的对应方法, byte[]以BLOB存储 <br>
+ * 整数类型, boolean与Date以INTEGER存储, float与double以REAL存储, char与String以TEXT存储
+ */
+public final class SQLiteValues {
+
+	private SQLiteValues() {}
+
+	public static void bindBoolean(SQLiteStatement statement, int index, boolean value) {
+		statement.bindLong(index, value ? 1 : 0);
+	}
+
+	public static void bindChar(SQLiteStatement statement, int index, char value) {
+		statement.bindString(index, String.valueOf(value));
+	}
+
+	public static void bindBytes(SQLiteStatement statement, int index, byte[] value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindBlob(index, value);
+	}
+
+	public static void bindString(SQLiteStatement statement, int index, String value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+
+	public static void bindDate(SQLiteStatement statement, int index, Date value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindLong(index, value.getTime());
+	}
+
+	public static void bindInteger(SQLiteStatement statement, int index, Integer value) {
+		bindLong(statement, index, value);
+	}
+
+	public static void bindShortObject(SQLiteStatement statement, int index, Short value) {
+		bindLong(statement, index, value);
+	}
+
+	public static void bindLongObject(SQLiteStatement statement, int index, Long value) {
+		bindLong(statement, index, value);
+	}
+
+	public static void bindFloatObject(SQLiteStatement statement, int index, Float value) {
+		bindDouble(statement, index, value);
+	}
+
+	public static void bindDoubleObject(SQLiteStatement statement, int index, Double value) {
+		bindDouble(statement, index, value);
+	}
+
+	public static void bindBooleanObject(SQLiteStatement statement, int index, Boolean value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			bindBoolean(statement, index, value.booleanValue());
+	}
+
+	public static void bindCharacter(SQLiteStatement statement, int index, Character value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			bindChar(statement, index, value.charValue());
+	}
+
+	private static void bindLong(SQLiteStatement statement, int index, Number value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindLong(index, value.longValue());
+	}
+
+	private static void bindDouble(SQLiteStatement statement, int index, Number value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindDouble(index, value.doubleValue());
+	}
+
+	public static boolean readBoolean(Cursor cursor, int index) {
+		String value = cursor.getString(index);
+		return "1".equals(value) || Boolean.parseBoolean(value);
+	}
+
+	public static char readChar(Cursor cursor, int index) {
+		String value = cursor.getString(index);
+		return value.length() > 0 ? value.charAt(0) : (char) 0;
+	}
+
+	public static byte[] readBytes(Cursor cursor, int index) {
+		return cursor.getBlob(index);
+	}
+
+	public static Date readDate(Cursor cursor, int index) {
+		return new Date(cursor.getLong(index));
+	}
+
+	/**
+	 * 兼容旧版本以字符串true, false存储的数据
+	 */
+	public static Boolean readBooleanObject(Cursor cursor, int index) {
+		return Boolean.valueOf(readBoolean(cursor, index));
+	}
+
+	public static Character readCharacter(Cursor cursor, int index) {
+		return Character.valueOf(readChar(cursor, index));
+	}
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.Log;
+
+/**
+ * 延迟合并写入 通过{@link SQLiteDao#writeBehind()}获取 <br>
+ * <ul>
+ * <li>save, updByKey, delByKeys先缓存在内存中, 缓存数量达到上限或第一条缓存后经过延迟时间时在写线程中一次事务提交</li>
+ * <li>相同类型的连续操作合并为一次批量操作, 操作顺序不变</li>
+ * <li>可以调用{@link #flush()}立即提交, 进程可能被回收前应调用{@link Broid#flush()}</li>
+ * <li>批量提交失败时整批回滚, 再逐个操作重新提交, 失败的单个操作(例如违反唯一约束)记录日志后丢弃, 不影响其后的操作</li>
+ * <li>逐个提交仍失败时(例如数据库无法打开)操作放回缓存, 延迟后重新提交, 连续失败{@value #MAX_FAILURES}次后丢弃</li>
+ * <li>未提交的数据在进程结束时丢失, 只适用于允许少量丢失的数据</li>
+ * </ul>
+ *
+ * @param <T>
+ *            表的映射类
+ */
+public class SQLiteWriteBehind<T> {
+
+	private static final CopyOnWriteArrayList<SQLiteWriteBehind<?>> INSTANCES = new CopyOnWriteArrayList<SQLiteWriteBehind<?>>();
+
+	private static final int SAVE = 0;
+
+	private static final int UPDATE = 1;
+
+	private static final int DELETE = 2;
+
+	private static final int MAX_FAILURES = 3;
+
+	private final SQLiteDao<T> mDao;
+
+	private final Object mFlushLock = new Object();
+
+	private ArrayList<Object> mValues = new ArrayList<Object>();
+
+	private ArrayList<Integer> mTypes = new ArrayList<Integer>();
+
+	private volatile int mMaxSize = 500;
+
+	private volatile long mDelay = 1000;
+
+	private ScheduledFuture<?> mDelayFuture;
+
+	private boolean mFlushPending;
+
+	/**
+	 * 连续放回缓存的次数 由mFlushLock保护
+	 */
+	private int mFailures;
+
+	private final Runnable mDelayTask = new Runnable() {
+
+		@Override
+		public void run() {
+			synchronized (SQLiteWriteBehind.this) {
+				mDelayFuture = null;
+			}
+			flushAsync();
+		}
+	};
+
+	private final Callable<Integer> mFlushTask = new Callable<Integer>() {
+
+		@Override
+		public Integer call() throws Exception {
+			synchronized (SQLiteWriteBehind.this) {
+				mFlushPending = false;
+			}
+			return flush();
+		}
+	};
+
+	SQLiteWriteBehind(SQLiteDao<T> dao) {
+		mDao = dao;
+		INSTANCES.add(this);
+	}
+
+	/**
+	 * 在当前线程中提交所有延迟写入中缓存的操作 一个提交失败时不影响其他的提交
+	 */
+	public static void flushAll() {
+		for (SQLiteWriteBehind<?> writeBehind : INSTANCES) {
+			try {
+				writeBehind.flush();
+			} catch (Exception e) {
+				Log.w(Broid.TAG, null, e);
+			}
+		}
+	}
+
+	/**
+	 * @param maxSize
+	 *            缓存的操作数量上限 默认500
+	 */
+	public void setMaxSize(int maxSize) {
+		mMaxSize = maxSize < 1 ? 1 : maxSize;
+	}
+
+	/**
+	 * @param delay
+	 *            第一条缓存后的最长等待时间 单位毫秒 默认1000
+	 */
+	public void setDelay(long delay) {
+		mDelay = delay < 0 ? 0 : delay;
+	}
+
+	public void save(T c) {
+		add(SAVE, c);
+	}
+
+	public void save(List<T> list) {
+		final int size = list.size();
+		for (int i = 0; i < size; i++) {
+			add(SAVE, list.get(i));
+		}
+	}
+
+	public void updByKey(T c) {
+		add(UPDATE, c);
+	}
+
+	public void delByKeys(long... keyValues) {
+		for (int i = 0; i < keyValues.length; i++) {
+			add(DELETE, keyValues[i]);
+		}
+	}
+
+	/**
+	 * @return 尚未提交的操作数量
+	 */
+	public synchronized int size() {
+		return mValues.size();
+	}
+
+	private synchronized void add(int type, Object value) {
+		mValues.add(value);
+		mTypes.add(type);
+		if (mValues.size() >= mMaxSize) {
+			if (!mFlushPending) {
+				mFlushPending = true;
+				SQLiteExecutor.write(mDao.getManager(), mFlushTask, null);
+			}
+		} else if (mDelayFuture == null && !mFlushPending)
+			mDelayFuture = SQLiteExecutor.schedule(mDelayTask, mDelay);
+	}
+
+	private void flushAsync() {
+		synchronized (this) {
+			if (mFlushPending || mValues.isEmpty())
+				return;
+			mFlushPending = true;
+		}
+		SQLiteExecutor.write(mDao.getManager(), mFlushTask, null);
+	}
+
+	/**
+	 * 在当前线程中立即提交缓存的操作 所有操作在同一个事务中执行 <br>
+	 * 任何一个操作失败时整个事务回滚, 再在一个新事务中逐个执行, 失败的操作被丢弃 <br>
+	 * 逐个执行的事务也失败时操作按原顺序放回缓存的最前面, 延迟后重新提交
+	 *
+	 * @return insert, update与delete实际影响的行数
+	 * @throws SQLException
+	 *             逐个执行的事务也失败时抛出, 连续失败{@value #MAX_FAILURES}次前缓存的操作不会丢失
+	 */
+	public int flush() {
+		synchronized (mFlushLock) {
+			final ArrayList<Object> values;
+			final ArrayList<Integer> types;
+			synchronized (this) {
+				if (mDelayFuture != null) {
+					mDelayFuture.cancel(false);
+					mDelayFuture = null;
+				}
+				if (mValues.isEmpty())
+					return 0;
+				values = mValues;
+				types = mTypes;
+				mValues = new ArrayList<Object>();
+				mTypes = new ArrayList<Integer>();
+			}
+			final int size = values.size();
+			int result;
+			try {
+				result = execute(values, types, false);
+			} catch (RuntimeException e) {
+				Log.w(Broid.TAG, "write behind rollback " + size + " operations, retry one by one", e);
+				try {
+					result = execute(values, types, true);
+				} catch (RuntimeException retry) {
+					requeue(values, types, retry);
+					throw retry;
+				}
+			}
+			mFailures = 0;
+			mDao.clearCache();
+			return result;
+		}
+	}
+
+	/**
+	 * 在一个事务中执行操作
+	 *
+	 * @param single
+	 *            是否逐个执行 为true时失败的操作被丢弃, 其他操作继续执行
+	 * @return 实际影响的行数
+	 */
+	private int execute(ArrayList<Object> values, ArrayList<Integer> types, boolean single) {
+		final int size = values.size();
+		int result = 0;
+		SQLiteDatabaseManager manager = mDao.getManager();
+		SQLiteDatabase database = manager.beginWrite();
+		try {
+			database.beginTransaction();
+			int type;
+			int end;
+			for (int start = 0; start < size; start = end) {
+				type = types.get(start);
+				end = start + 1;
+				if (!single) {
+					while (end < size && types.get(end) == type)
+						end++;
+					result += execute(database, values, type, start, end);
+				} else {
+					try {
+						result += execute(database, values, type, start, end);
+					} catch (SQLException e) {
+						Log.w(Broid.TAG, "write behind drop operation " + values.get(start), e);
+					}
+				}
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+			manager.endWrite();
+		}
+		return result;
+	}
+
+	/**
+	 * 将连续的同类型操作合并为一次批量操作
+	 */
+	@SuppressWarnings("unchecked")
+	private int execute(SQLiteDatabase database, ArrayList<Object> values, int type, int start, int end) {
+		switch (type) {
+		case SAVE:
+			return mDao.insertBatch(database, (List<T>) values.subList(start, end));
+		case UPDATE:
+			return mDao.updateBatch(database, (List<T>) values.subList(start, end));
+		default:
+			long[] keys = new long[end - start];
+			for (int i = start; i < end; i++) {
+				keys[i - start] = (Long) values.get(i);
+			}
+			return mDao.deleteBatch(database, keys);
+		}
+	}
+
+	/**
+	 * 操作按原顺序放回缓存的最前面并重新开始延迟, 异步提交失败后不需要等待新的操作 <br>
+	 * 连续失败{@value #MAX_FAILURES}次后丢弃, 避免缓存无限增长
+	 */
+	private void requeue(ArrayList<Object> values, ArrayList<Integer> types, RuntimeException e) {
+		if (++mFailures >= MAX_FAILURES) {
+			mFailures = 0;
+			Log.w(Broid.TAG, "write behind drop " + values.size() + " operations after " + MAX_FAILURES + " failures", e);
+			return;
+		}
+		synchronized (this) {
+			values.addAll(mValues);
+			types.addAll(mTypes);
+			mValues = values;
+			mTypes = types;
+			if (mDelayFuture == null && !mFlushPending)
+				mDelayFuture = SQLiteExecutor.schedule(mDelayTask, mDelay);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.test.SQLiteConnectionTest.Event;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 异步读写的线程
+ */
+public class AsyncSQLiteDaoTest extends StorageTestCase {
+
+	private SQLiteDao<Record> mRecords;
+
+	private SQLiteDao<Event> mEvents;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mEvents = Broid.getSQLiteDao(Event.class);
+		mRecords.del();
+		mEvents.del();
+	}
+
+	/**
+	 * 一个数据库的写线程被占用时, 其他数据库的写操作不等待
+	 */
+	public void testWriteLanesPerDatabase() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<Boolean> blocked = mRecords.async().write(new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() throws Exception {
+				return release.await(10, TimeUnit.SECONDS);
+			}
+		}, null);
+		try {
+			Event event = new Event();
+			event.text = "other database";
+			assertTrue(mEvents.async().save(event, null).get(5, TimeUnit.SECONDS) > 0);
+			// 同一数据库的写操作排在被占用的写线程之后
+			Future<Long> queued = mRecords.async().save(SQLiteDaoTest.newRecord("queued", 1), null);
+			Thread.sleep(200);
+			assertFalse(queued.isDone());
+			release.countDown();
+			assertTrue(queued.get(5, TimeUnit.SECONDS) > 0);
+		} finally {
+			release.countDown();
+		}
+		assertTrue(blocked.get(5, TimeUnit.SECONDS));
+		assertEquals(1, mRecords.count());
+	}
+
+	/**
+	 * 同一数据库的写操作按提交顺序执行
+	 */
+	public void testWritesInOrder() throws Exception {
+		ArrayList<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for (int i = 0; i < 20; i++) {
+			futures.add(mRecords.async().save(SQLiteDaoTest.newRecord("record " + i, i), null));
+		}
+		long previous = 0;
+		for (int i = 0; i < futures.size(); i++) {
+			final long rowid = futures.get(i).get(5, TimeUnit.SECONDS);
+			assertTrue(rowid > previous);
+			previous = rowid;
+		}
+	}
+
+}
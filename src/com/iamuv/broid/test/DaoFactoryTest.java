@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Preferences;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+
+/**
+ * Dao的创建与预加载
+ */
+public class DaoFactoryTest extends StorageTestCase {
+
+	@Table(database = DATABASE)
+	public static class Concurrent {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String text;
+	}
+
+	@Table(database = DATABASE)
+	public static class Preloaded {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String text;
+	}
+
+	@Preferences(name = "broid_test_preferences")
+	public static class Settings {
+
+		public String user;
+	}
+
+	/**
+	 * 多个线程同时获取时只创建一个Dao
+	 */
+	public void testConcurrentCreation() throws Exception {
+		final int count = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(count);
+		final Object[] results = new Object[count];
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+						results[index] = Broid.getSQLiteDao(Concurrent.class);
+					} catch (InterruptedException e) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			assertNotNull(results[i]);
+			assertSame(results[0], results[i]);
+		}
+		assertSame(results[0], Broid.getSQLiteDao(Concurrent.class));
+	}
+
+	/**
+	 * 预加载在后台创建的Dao与之后获取的是同一个实例, 预加载期间读线程可用
+	 */
+	public void testPreload() throws Exception {
+		Broid.preload(Preloaded.class, Settings.class, String.class);
+		SQLiteDao<Preloaded> dao = Broid.getSQLiteDao(Preloaded.class);
+		assertSame(dao, Broid.getSQLiteDao(Preloaded.class));
+		assertNotNull(dao.async().get(null).get(5, TimeUnit.SECONDS));
+		assertSame(Broid.getPreferencesDao(Settings.class), Broid.getPreferencesDao(Settings.class));
+	}
+
+}
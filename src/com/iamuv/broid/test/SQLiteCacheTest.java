@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 实体缓存与查询结果缓存的命中与失效
+ */
+public class SQLiteCacheTest extends StorageTestCase {
+
+	private SQLiteDao<Record> mRecords;
+
+	private final ArrayList<Record> mSaved = new ArrayList<Record>();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+		for (int i = 0; i < 3; i++) {
+			mRecords.save(SQLiteDaoTest.newRecord("record " + i, i));
+		}
+		mSaved.clear();
+		mSaved.addAll(mRecords.get(null, null, null, null, "count", null));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mRecords.setCacheSize(0);
+		mRecords.setQueryCacheSize(0, 0);
+		super.tearDown();
+	}
+
+	public void testEntityCacheHit() {
+		mRecords.setCacheSize(2);
+		final int key = mSaved.get(0).id;
+		final long hits = mRecords.getCacheHitCount();
+		final long misses = mRecords.getCacheMissCount();
+		Record first = mRecords.getByKey(key);
+		assertSame(first, mRecords.getByKey(key));
+		assertSame(first, mRecords.getByRow(key));
+		assertEquals(hits + 2, mRecords.getCacheHitCount());
+		assertEquals(misses + 1, mRecords.getCacheMissCount());
+	}
+
+	/**
+	 * 超出数量上限时淘汰最久未访问的实体
+	 */
+	public void testEntityCacheEviction() {
+		mRecords.setCacheSize(2);
+		mRecords.getByKey(mSaved.get(0).id);
+		mRecords.getByKey(mSaved.get(1).id);
+		mRecords.getByKey(mSaved.get(0).id);
+		mRecords.getByKey(mSaved.get(2).id);
+		final long misses = mRecords.getCacheMissCount();
+		mRecords.getByKey(mSaved.get(0).id);
+		assertEquals(misses, mRecords.getCacheMissCount());
+		mRecords.getByKey(mSaved.get(1).id);
+		assertEquals(misses + 1, mRecords.getCacheMissCount());
+	}
+
+	/**
+	 * 通过Dao写入(包括rawQuery)后不会读到缓存的旧数据
+	 */
+	public void testEntityCacheInvalidation() {
+		mRecords.setCacheSize(10);
+		final int key = mSaved.get(0).id;
+		Record record = mRecords.getByKey(key);
+		Record update = SQLiteDaoTest.newRecord("updated", 100);
+		update.id = key;
+		assertEquals(1, mRecords.updByKey(update));
+		assertEquals(100, mRecords.getByKey(key).count);
+		assertNotSame(record, mRecords.getByKey(key));
+		assertEquals(1, mRecords.delByKeys(key));
+		assertNull(mRecords.getByKey(key));
+		final int last = mSaved.get(2).id;
+		assertEquals(2, mRecords.getByKey(last).count);
+		queryString(mRecords, "UPDATE table_record SET count=200 WHERE id=?", last);
+		assertEquals(200, mRecords.getByKey(last).count);
+		mRecords.getByKey(mSaved.get(1).id);
+		mRecords.del();
+		assertNull(mRecords.getByKey(mSaved.get(1).id));
+	}
+
+	/**
+	 * 相同的查询与条件值命中缓存, 返回的list可以修改
+	 */
+	public void testQueryCacheHit() {
+		mRecords.setQueryCacheSize(4, 100);
+		final long hits = mRecords.getQueryCacheHitCount();
+		ArrayList<Record> first = mRecords.get("count>?", new Object[] { 0L });
+		assertEquals(2, first.size());
+		first.clear();
+		assertEquals(2, mRecords.get(" count>? ", new Object[] { 0L }).size());
+		assertEquals(hits + 1, mRecords.getQueryCacheHitCount());
+		assertEquals(1, mRecords.get("count>?", new Object[] { 1L }).size());
+		assertEquals(hits + 1, mRecords.getQueryCacheHitCount());
+	}
+
+	/**
+	 * 通过Dao写入(包括rawQuery)后缓存的结果失效
+	 */
+	public void testQueryCacheInvalidation() {
+		mRecords.setQueryCacheSize(4, 100);
+		assertEquals(3, mRecords.get().size());
+		mRecords.save(SQLiteDaoTest.newRecord("new", 3));
+		assertEquals(4, mRecords.get().size());
+		queryString(mRecords, "DELETE FROM table_record WHERE count=3");
+		assertEquals(3, mRecords.get().size());
+	}
+
+	/**
+	 * 超过总行数上限的结果不缓存
+	 */
+	public void testQueryCacheRowLimit() {
+		mRecords.setQueryCacheSize(4, 2);
+		final long hits = mRecords.getQueryCacheHitCount();
+		mRecords.get();
+		mRecords.get();
+		assertEquals(hits, mRecords.getQueryCacheHitCount());
+		mRecords.get(null, null, null, null, "count", "2");
+		mRecords.get(null, null, null, null, "count", "2");
+		assertEquals(hits + 1, mRecords.getQueryCacheHitCount());
+	}
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteDao.rawQueryCallback;
+import com.iamuv.broid.storage.SQLiteIterator;
+
+/**
+ * 数据库连接的共享与关闭
+ */
+public class SQLiteConnectionTest extends StorageTestCase {
+
+	@Table(database = DATABASE)
+	public static class Note {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String text;
+	}
+
+	@Table(database = DATABASE)
+	public static class Tag {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String name;
+	}
+
+	@Table(database = "broid_test_wal.sqlite", writeAheadLogging = true)
+	public static class Event {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String text;
+	}
+
+	private SQLiteDao<Note> mNotes;
+
+	private SQLiteDao<Tag> mTags;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mNotes = Broid.getSQLiteDao(Note.class);
+		mTags = Broid.getSQLiteDao(Tag.class);
+		mNotes.del();
+		mTags.del();
+	}
+
+	/**
+	 * 临时表只存在于创建它的连接上, 同一数据库的两个Dao能看到同一张临时表说明共享一个连接
+	 */
+	public void testDaosShareOneConnection() {
+		queryString(mNotes, "CREATE TEMP TABLE IF NOT EXISTS shared_probe (x INTEGER)");
+		queryString(mNotes, "DELETE FROM temp.shared_probe");
+		queryString(mNotes, "INSERT INTO temp.shared_probe VALUES (1)");
+		assertEquals(1, queryLong(mTags, "SELECT COUNT(*) FROM temp.shared_probe"));
+	}
+
+	public void testReopenAfterIdleClose() throws Exception {
+		setSQLiteIdleTime(0);
+		queryString(mNotes, "CREATE TEMP TABLE IF NOT EXISTS idle_probe (x INTEGER)");
+		// 引用计数归零后连接立即关闭, 临时表随之删除, 之后的操作重新打开连接
+		Note note = new Note();
+		note.text = "after reopen";
+		assertTrue(mNotes.save(note) > 0);
+		assertEquals(-1, queryLong(mTags, "SELECT COUNT(*) FROM temp.idle_probe"));
+		assertEquals(1, mNotes.get().size());
+		assertEquals("after reopen", mNotes.get().get(0).text);
+	}
+
+	public void testRawQueryRunsOnWriteConnection() {
+		saveNotes(3);
+		queryString(mNotes, "UPDATE table_note SET text=?", "raw");
+		assertEquals(3, mNotes.count("text=?", new Object[] { "raw" }));
+		assertEquals(3, queryLong(mNotes, "SELECT COUNT(*) FROM table_note"));
+	}
+
+	/**
+	 * 其他线程的读操作不等待打开中的迭代器
+	 */
+	public void testReadsDoNotBlockEachOther() throws Exception {
+		saveNotes(10);
+		SQLiteIterator<Note> iterator = mNotes.iterate();
+		try {
+			assertTrue(iterator.hasNext());
+			final int[] count = new int[1];
+			Thread reader = new Thread() {
+
+				@Override
+				public void run() {
+					count[0] = mNotes.get().size();
+				}
+			};
+			reader.start();
+			reader.join(5000);
+			assertFalse(reader.isAlive());
+			assertEquals(10, count[0]);
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * 迭代器可以在其他线程关闭, 关闭前其他线程的写操作等待
+	 */
+	public void testIteratorClosedOnAnotherThread() throws Exception {
+		saveNotes(10);
+		final SQLiteIterator<Note> iterator = mNotes.iterate();
+		assertTrue(iterator.hasNext());
+		final CountDownLatch saved = new CountDownLatch(1);
+		Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+				Note note = new Note();
+				note.text = "writer";
+				mNotes.save(note);
+				saved.countDown();
+			}
+		};
+		writer.start();
+		assertFalse(saved.await(300, TimeUnit.MILLISECONDS));
+		final Throwable[] error = new Throwable[1];
+		Thread closer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					while (iterator.hasNext())
+						iterator.next();
+					iterator.close();
+				} catch (Throwable tr) {
+					error[0] = tr;
+				}
+			}
+		};
+		closer.start();
+		closer.join(5000);
+		assertNull(error[0]);
+		assertTrue(saved.await(5, TimeUnit.SECONDS));
+		assertEquals(11, mNotes.count());
+	}
+
+	/**
+	 * 空闲关闭后重新打开的连接仍处于WAL模式
+	 */
+	public void testWriteAheadLoggingAfterIdleReopen() throws Exception {
+		SQLiteDao<Event> events = Broid.getSQLiteDao(Event.class);
+		assertTrue("wal".equalsIgnoreCase(queryString(events, "PRAGMA journal_mode")));
+		setSQLiteIdleTime(0);
+		events.del();
+		Event event = new Event();
+		event.text = "reopen";
+		assertTrue(events.save(event) > 0);
+		assertTrue("wal".equalsIgnoreCase(queryString(events, "PRAGMA journal_mode")));
+		assertEquals(1, events.count());
+	}
+
+	/**
+	 * WAL模式下打开中的迭代器不阻塞其他线程的写操作
+	 */
+	public void testWriteAheadLoggingReaderDoesNotBlockWriter() throws Exception {
+		final SQLiteDao<Event> events = Broid.getSQLiteDao(Event.class);
+		events.del();
+		Event event = new Event();
+		event.text = "first";
+		events.save(event);
+		SQLiteIterator<Event> iterator = events.iterate();
+		try {
+			assertTrue(iterator.hasNext());
+			final CountDownLatch saved = new CountDownLatch(1);
+			new Thread() {
+
+				@Override
+				public void run() {
+					Event event = new Event();
+					event.text = "second";
+					events.save(event);
+					saved.countDown();
+				}
+			}.start();
+			assertTrue(saved.await(5, TimeUnit.SECONDS));
+		} finally {
+			iterator.close();
+		}
+		assertEquals(2, events.count());
+	}
+
+	/**
+	 * WAL模式下rawQuery回调内的读操作使用写连接, 可以看到未提交的修改
+	 */
+	public void testCallbackReadsSeeTransaction() {
+		final SQLiteDao<Event> events = Broid.getSQLiteDao(Event.class);
+		events.del();
+		final int[] count = new int[] { -1 };
+		events.rawQuery("INSERT INTO table_event (text) VALUES (?)", new Object[] { "raw" }, new rawQueryCallback() {
+
+			@Override
+			public void processCursor(Cursor cursor) {
+				cursor.moveToFirst();
+				count[0] = events.get().size();
+			}
+		});
+		assertEquals(1, count[0]);
+		assertEquals(1, events.count());
+	}
+
+	/**
+	 * 备份包含所有表的数据与自增序列
+	 */
+	public void testBackup() {
+		saveNotes(3);
+		final Note last = mNotes.get(null, null, null, null, "id DESC", "1").get(0);
+		mNotes.delByKeys(last.id);
+		Tag tag = new Tag();
+		tag.name = "tag";
+		mTags.save(tag);
+		File target = new File(getContext().getCacheDir(), "broid_backup.sqlite");
+		assertTrue(mNotes.backup(target));
+		assertEquals(2, countBackup(target, "SELECT COUNT(*) FROM table_note"));
+		assertEquals(1, countBackup(target, "SELECT COUNT(*) FROM table_tag"));
+		assertEquals(last.id, countBackup(target, "SELECT seq FROM sqlite_sequence WHERE name='table_note'"));
+		assertFalse(new File(target.getPath() + "-tmp").exists());
+		target.delete();
+	}
+
+	/**
+	 * WAL模式下备份不改变数据库的日志模式
+	 */
+	public void testBackupKeepsWriteAheadLogging() throws Exception {
+		SQLiteDao<Event> events = Broid.getSQLiteDao(Event.class);
+		events.del();
+		Event event = new Event();
+		event.text = "backup";
+		events.save(event);
+		File target = new File(getContext().getCacheDir(), "broid_backup_wal.sqlite");
+		assertTrue(events.backup(target));
+		assertEquals(1, countBackup(target, "SELECT COUNT(*) FROM table_event"));
+		assertTrue("wal".equalsIgnoreCase(queryString(events, "PRAGMA journal_mode")));
+		target.delete();
+	}
+
+	private static long countBackup(File file, String sql) {
+		SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+		try {
+			return database.compileStatement(sql).simpleQueryForLong();
+		} finally {
+			database.close();
+		}
+	}
+
+	private void saveNotes(int count) {
+		for (int i = 0; i < count; i++) {
+			Note note = new Note();
+			note.text = "note " + i;
+			mNotes.save(note);
+		}
+	}
+
+}
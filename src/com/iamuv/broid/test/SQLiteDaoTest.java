@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteDao.UpsertResult;
+import com.iamuv.broid.test.SQLiteSchemaTest.Contact;
+
+/**
+ * SQLiteDao的读写, 存储格式与表结构维护
+ */
+public class SQLiteDaoTest extends StorageTestCase {
+
+	@Table(database = DATABASE)
+	public static class Record {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String name;
+
+		public long count;
+
+		public double score;
+
+		public boolean flag;
+
+		public char letter;
+
+		public byte[] data;
+
+		public Date time;
+
+		public Integer level;
+
+		public Float rate;
+	}
+
+	@Table(database = DATABASE)
+	public static class Item {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String title;
+	}
+
+	@Table(database = DATABASE)
+	public static class Inbox {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public String title;
+	}
+
+	private SQLiteDao<Record> mRecords;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+	}
+
+	/**
+	 * 连接关闭后缓存的预编译语句随之释放, 重新打开后在新连接上重新编译
+	 */
+	public void testStatementsRecompiledAfterReopen() throws Exception {
+		setSQLiteIdleTime(0);
+		Record record = newRecord("first", 1);
+		assertTrue(mRecords.save(record) > 0);
+		assertTrue(mRecords.save(newRecord("second", 2)) > 0);
+		record = mRecords.get("name=?", new Object[] { "first" }).get(0);
+		record.count = 10;
+		assertEquals(1, mRecords.updByKey(record));
+		assertEquals(10, mRecords.getByKey(record.id).count);
+		assertEquals(1, mRecords.delByKeys(record.id));
+		assertEquals(1, mRecords.count());
+	}
+
+	public void testSaveListReusesStatement() {
+		ArrayList<Record> list = new ArrayList<Record>();
+		for (int i = 0; i < 100; i++) {
+			list.add(newRecord("record " + i, i));
+		}
+		assertEquals(100, mRecords.save(list));
+		assertEquals(100, mRecords.count());
+		assertEquals(4950, (long) mRecords.sum("count", null, null));
+	}
+
+	/**
+	 * 每种属性类型写入后读出的值不变
+	 */
+	public void testColumnRoundTrip() {
+		Record record = newRecord("round trip", Long.MAX_VALUE);
+		record.score = 0.1;
+		record.flag = true;
+		record.letter = '\u4e2d';
+		record.data = new byte[] { 0, 1, -1, 127, -128 };
+		record.time = new Date(1418000000123L);
+		record.level = Integer.valueOf(-7);
+		record.rate = Float.valueOf(2.5f);
+		final long rowid = mRecords.save(record);
+		assertTrue(rowid > 0);
+		Record result = mRecords.getByRow(rowid);
+		assertEquals("round trip", result.name);
+		assertEquals(Long.MAX_VALUE, result.count);
+		assertEquals(0.1, result.score, 0);
+		assertTrue(result.flag);
+		assertEquals('\u4e2d', result.letter);
+		assertTrue(Arrays.equals(record.data, result.data));
+		assertEquals(record.time, result.time);
+		assertEquals(Integer.valueOf(-7), result.level);
+		assertEquals(Float.valueOf(2.5f), result.rate);
+	}
+
+	/**
+	 * 封装类型为null时不覆盖读出实例中的默认值
+	 */
+	public void testNullColumns() {
+		final long rowid = mRecords.save(new Record());
+		Record result = mRecords.getByRow(rowid);
+		assertNull(result.name);
+		assertNull(result.data);
+		assertNull(result.time);
+		assertNull(result.level);
+		assertNull(result.rate);
+	}
+
+	/**
+	 * 表名按英文规则转换大小写, 土耳其语环境下的"I"不会变成"ı"
+	 */
+	public void testTableNameIgnoresDefaultLocale() {
+		final Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			SQLiteDao<Item> items = new SQLiteDao<Item>(Item.class);
+			items.del();
+			Item item = new Item();
+			item.title = "title";
+			assertTrue(items.save(item) > 0);
+		} finally {
+			Locale.setDefault(locale);
+		}
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='table_item'"));
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM table_item"));
+	}
+
+	/**
+	 * 旧版本在土耳其语环境下创建的表改为新表名, 数据保留
+	 */
+	public void testLegacyTableRenamed() {
+		queryString(mRecords, "DROP TABLE IF EXISTS table_inbox");
+		queryString(mRecords, "DROP TABLE IF EXISTS \"table_\u0131nbox\"");
+		queryString(mRecords, "CREATE TABLE \"table_\u0131nbox\" (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT)");
+		queryString(mRecords, "INSERT INTO \"table_\u0131nbox\" (title) VALUES ('legacy')");
+		final Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		SQLiteDao<Inbox> inbox;
+		try {
+			inbox = new SQLiteDao<Inbox>(Inbox.class);
+		} finally {
+			Locale.setDefault(locale);
+		}
+		assertEquals(1, inbox.count());
+		assertEquals("legacy", inbox.get().get(0).title);
+		assertEquals(0, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE name='table_\u0131nbox'"));
+	}
+
+	/**
+	 * 按自增主键upsert 主键为0时insert, 已存在时update
+	 */
+	public void testUpsertByAutoKey() {
+		ArrayList<Record> list = new ArrayList<Record>();
+		for (int i = 0; i < 3; i++) {
+			list.add(newRecord("record " + i, i));
+		}
+		mRecords.save(list);
+		list = mRecords.get(null, null, null, null, "count", null);
+		list.get(0).count = 10;
+		list.get(1).count = 11;
+		list.remove(2);
+		list.add(newRecord("new 0", 20));
+		list.add(newRecord("new 1", 21));
+		UpsertResult result = mRecords.upsert(list);
+		assertEquals(2, result.getInserted());
+		assertEquals(2, result.getUpdated());
+		assertEquals(5, mRecords.count());
+		assertEquals(10 + 11 + 2 + 20 + 21, (long) mRecords.sum("count", null, null));
+	}
+
+	/**
+	 * 按唯一索引的字段upsert
+	 */
+	public void testUpsertByUniqueColumns() {
+		SQLiteDao<Contact> contacts = Broid.getSQLiteDao(Contact.class);
+		contacts.del();
+		ArrayList<Contact> list = new ArrayList<Contact>();
+		for (int i = 0; i < 4; i++) {
+			Contact contact = new Contact();
+			contact.ownerId = 1;
+			contact.name = "name " + i;
+			contact.phone = "old";
+			list.add(contact);
+		}
+		UpsertResult result = contacts.upsert(list, "ownerId", "name");
+		assertEquals(4, result.getInserted());
+		assertEquals(0, result.getUpdated());
+		list.get(0).phone = "new";
+		list.get(1).phone = "new";
+		list.get(2).ownerId = 2;
+		result = contacts.upsert(list, "ownerId", "name");
+		assertEquals(1, result.getInserted());
+		assertEquals(3, result.getUpdated());
+		assertEquals(5, contacts.count());
+		assertEquals(2, contacts.count("phone=?", new Object[] { "new" }));
+	}
+
+	/**
+	 * 按主键批量读取与删除时在分段长度的边界上不遗漏也不重复
+	 */
+	public void testKeyChunkBoundaries() {
+		ArrayList<Record> list = new ArrayList<Record>();
+		for (int i = 0; i < 600; i++) {
+			list.add(newRecord("record " + i, i));
+		}
+		assertEquals(600, mRecords.save(list));
+		list = mRecords.get(null, null, null, null, "id", null);
+		final long[] keys = new long[list.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = list.get(i).id;
+		}
+		final int[] sizes = new int[] { 1, 7, 8, 64, 65, 70, 512, 513, 600 };
+		for (int i = 0; i < sizes.length; i++) {
+			LinkedHashMap<Long, Record> result = mRecords.getByKeys(Arrays.copyOf(keys, sizes[i]));
+			assertEquals(sizes[i], result.size());
+			for (int j = 0; j < sizes[i]; j++) {
+				assertEquals(keys[j], result.get(keys[j]).id);
+			}
+		}
+		assertEquals(513, mRecords.delByKeys(Arrays.copyOfRange(keys, 0, 513)));
+		assertEquals(87, mRecords.count());
+		assertEquals(65, mRecords.delByKeys(Arrays.copyOfRange(keys, 513, 578)));
+		assertEquals(22, mRecords.count());
+		assertEquals(7, mRecords.delByKeys(Arrays.copyOfRange(keys, 578, 585)));
+		assertEquals(15, mRecords.count());
+	}
+
+	static Record newRecord(String name, long count) {
+		Record record = new Record();
+		record.name = name;
+		record.count = count;
+		return record;
+	}
+
+}
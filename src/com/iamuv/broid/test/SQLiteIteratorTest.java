@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.NoSuchElementException;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteIterator;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 逐行读取查询结果与连接的释放
+ */
+public class SQLiteIteratorTest extends StorageTestCase {
+
+	private SQLiteDao<Record> mRecords;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+		for (int i = 0; i < 50; i++) {
+			mRecords.save(SQLiteDaoTest.newRecord("record " + i, i));
+		}
+	}
+
+	/**
+	 * 遍历到最后一行后自动关闭, 之后当前线程可以写入
+	 */
+	public void testClosedAfterLastRow() {
+		SQLiteIterator<Record> iterator = mRecords.iterate(null, null, null, null, "count", null, false);
+		assertEquals(50, iterator.getCount());
+		long expected = 0;
+		while (iterator.hasNext()) {
+			assertEquals(expected++, iterator.next().count);
+		}
+		assertEquals(50, expected);
+		try {
+			iterator.next();
+			fail();
+		} catch (NoSuchElementException e) {
+		}
+		assertTrue(mRecords.save(SQLiteDaoTest.newRecord("after", 50)) > 0);
+		assertEquals(51, mRecords.count());
+	}
+
+	/**
+	 * 提前关闭后释放连接, 重复关闭没有影响
+	 */
+	public void testCloseEarly() {
+		SQLiteIterator<Record> iterator = mRecords.iterate();
+		assertTrue(iterator.hasNext());
+		iterator.next();
+		iterator.close();
+		iterator.close();
+		assertFalse(iterator.hasNext());
+		assertEquals(50, mRecords.delByKeys(allKeys()));
+		assertEquals(0, mRecords.count());
+	}
+
+	public void testReuseInstance() {
+		SQLiteIterator<Record> iterator = mRecords.iterate(null, null, null, null, "count", "2", true);
+		try {
+			Record first = iterator.next();
+			assertEquals(0, first.count);
+			Record second = iterator.next();
+			assertSame(first, second);
+			assertEquals(1, second.count);
+			assertFalse(iterator.hasNext());
+		} finally {
+			iterator.close();
+		}
+	}
+
+	private int[] allKeys() {
+		SQLiteIterator<Record> iterator = mRecords.iterate();
+		int[] keys = new int[iterator.getCount()];
+		for (int i = 0; iterator.hasNext(); i++) {
+			keys[i] = iterator.next().id;
+		}
+		return keys;
+	}
+
+}
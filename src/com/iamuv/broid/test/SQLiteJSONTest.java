@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteDao.ProgressListener;
+
+/**
+ * JSON数组的导入与导出
+ */
+public class SQLiteJSONTest extends StorageTestCase {
+
+	/**
+	 * 字段都不是public, 也没有getter与setter
+	 */
+	@Table(database = DATABASE)
+	public static class Message {
+
+		@Column(isAutoKey = true)
+		int id;
+
+		private String text;
+
+		long time;
+
+		boolean seen;
+
+		char mark;
+
+		byte[] data;
+
+		Date created;
+
+		Integer level;
+	}
+
+	private SQLiteDao<Message> mMessages;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mMessages = Broid.getSQLiteDao(Message.class);
+		mMessages.del();
+	}
+
+	/**
+	 * 每个事务提交后回调一次进度, 非public字段按字段名导入
+	 */
+	public void testImportProgress() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < 1200; i++) {
+			if (i > 0)
+				builder.append(',');
+			builder.append("{\"text\":\"message ").append(i).append("\",\"time\":").append(i);
+			builder.append(",\"seen\":").append(i % 2 == 0).append(",\"mark\":\"m\",\"data\":\"AAH/\",\"created\":").append(1418000000123L);
+			builder.append('}');
+		}
+		builder.append(']');
+		final ArrayList<Integer> progress = new ArrayList<Integer>();
+		assertEquals(1200, mMessages.importJSON(new StringReader(builder.toString()), new ProgressListener() {
+
+			@Override
+			public void onProgress(int count) {
+				progress.add(count);
+			}
+		}));
+		assertEquals(Arrays.asList(500, 1000, 1200), progress);
+		assertEquals(1200, mMessages.count());
+		assertEquals(600, mMessages.count("seen=?", new Object[] { 1 }));
+		Message message = mMessages.get("time=?", new Object[] { 7 }).get(0);
+		assertEquals("message 7", message.text);
+		assertFalse(message.seen);
+		assertEquals('m', message.mark);
+		assertTrue(Arrays.equals(new byte[] { 0, 1, -1 }, message.data));
+		assertEquals(new Date(1418000000123L), message.created);
+		assertNull(message.level);
+	}
+
+	/**
+	 * 按自增主键导入时已存在的数据update
+	 */
+	public void testImportUpsert() {
+		assertEquals(2, mMessages.importJSON(new StringReader("[{\"text\":\"first\"},{\"text\":\"second\"}]"), null));
+		final int id = mMessages.get("text=?", new Object[] { "first" }).get(0).id;
+		final String json = "[{\"id\":" + id + ",\"text\":\"updated\",\"level\":3},{\"text\":\"third\"}]";
+		assertEquals(2, mMessages.importJSON(new StringReader(json), true, null));
+		assertEquals(3, mMessages.count());
+		Message message = mMessages.getByKey(id);
+		assertEquals("updated", message.text);
+		assertEquals(Integer.valueOf(3), message.level);
+	}
+
+	/**
+	 * 导出按字段映射写入, 非public字段导出后可以原样导入
+	 */
+	public void testExportRoundTrip() {
+		for (int i = 0; i < 3; i++) {
+			Message message = new Message();
+			message.text = "message " + i;
+			message.time = i;
+			message.seen = i == 1;
+			message.mark = '\u4e2d';
+			message.data = new byte[] { (byte) i, -1 };
+			message.created = new Date(1418000000123L + i);
+			message.level = i == 2 ? null : Integer.valueOf(i);
+			mMessages.save(message);
+		}
+		StringWriter writer = new StringWriter();
+		assertEquals(2, mMessages.exportJSON(writer, "time>?", new Object[] { 0 }, "time"));
+		final String json = writer.toString();
+		assertTrue(json.contains("\"text\":\"message 1\""));
+		assertFalse(json.contains("\"level\":null"));
+		mMessages.del();
+		assertEquals(2, mMessages.importJSON(new StringReader(json), true, null));
+		Message message = mMessages.get("time=?", new Object[] { 1 }).get(0);
+		assertEquals("message 1", message.text);
+		assertTrue(message.seen);
+		assertEquals('\u4e2d', message.mark);
+		assertTrue(Arrays.equals(new byte[] { 1, -1 }, message.data));
+		assertEquals(new Date(1418000000124L), message.created);
+		assertEquals(Integer.valueOf(1), message.level);
+		assertNull(mMessages.get("time=?", new Object[] { 2 }).get(0).level);
+	}
+
+}
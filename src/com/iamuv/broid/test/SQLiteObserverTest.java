@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteChange;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteObserver;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 观察查询结果的变化 测试线程没有Looper, 回调在读线程中执行
+ */
+public class SQLiteObserverTest extends StorageTestCase {
+
+	private SQLiteDao<Record> mRecords;
+
+	private final LinkedBlockingQueue<SQLiteChange<Record>> mChanges = new LinkedBlockingQueue<SQLiteChange<Record>>();
+
+	private final SQLiteObserver<Record> mObserver = new SQLiteObserver<Record>() {
+
+		@Override
+		protected void onChange(SQLiteChange<Record> change) {
+			mChanges.add(change);
+		}
+	};
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+		for (int i = 0; i < 3; i++) {
+			mRecords.save(SQLiteDaoTest.newRecord("record " + i, i));
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mObserver.cancel();
+		super.tearDown();
+	}
+
+	/**
+	 * 注册后回调一次完整结果, 之后延迟时间内的写入合并为一次回调
+	 */
+	public void testChangesMerged() throws Exception {
+		mObserver.setDelay(300);
+		mRecords.observe("count<?", new Object[] { 10 }, "count", mObserver);
+		SQLiteChange<Record> change = mChanges.poll(5, TimeUnit.SECONDS);
+		assertEquals(3, change.getItems().size());
+		assertEquals(3, change.getInserted().size());
+		ArrayList<Record> items = change.getItems();
+		final long inserted = mRecords.save(SQLiteDaoTest.newRecord("inserted", 5));
+		Record updated = items.get(1);
+		updated.name = "updated";
+		mRecords.updByKey(updated);
+		mRecords.delByKeys(items.get(0).id);
+		change = mChanges.poll(5, TimeUnit.SECONDS);
+		assertNotNull(change);
+		assertEquals(3, change.getItems().size());
+		assertEquals(1, change.getInserted().size());
+		assertEquals(inserted, (long) change.getInserted().get(0));
+		assertEquals(1, change.getUpdated().size());
+		assertEquals(updated.id, (long) change.getUpdated().get(0));
+		assertEquals(1, change.getRemoved().size());
+		assertEquals(items.get(0).id, (long) change.getRemoved().get(0));
+		assertNull(mChanges.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * 写入没有改变查询结果时不回调, 取消后不再回调
+	 */
+	public void testNoCallbackWithoutChange() throws Exception {
+		mObserver.setDelay(0);
+		mRecords.observe("count<?", new Object[] { 10 }, null, mObserver);
+		assertNotNull(mChanges.poll(5, TimeUnit.SECONDS));
+		mRecords.save(SQLiteDaoTest.newRecord("outside", 100));
+		assertNull(mChanges.poll(500, TimeUnit.MILLISECONDS));
+		mObserver.cancel();
+		mRecords.save(SQLiteDaoTest.newRecord("inside", 1));
+		assertNull(mChanges.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * 通过rawQuery删除后回调被删除的主键
+	 */
+	public void testRawQueryNotifies() throws Exception {
+		mObserver.setDelay(0);
+		mRecords.observe("count<?", new Object[] { 10 }, "count", mObserver);
+		SQLiteChange<Record> change = mChanges.poll(5, TimeUnit.SECONDS);
+		final int removed = change.getItems().get(0).id;
+		queryString(mRecords, "DELETE FROM table_record WHERE id=?", removed);
+		change = mChanges.poll(5, TimeUnit.SECONDS);
+		assertNotNull(change);
+		assertEquals(2, change.getItems().size());
+		assertEquals(1, change.getRemoved().size());
+		assertEquals(removed, (long) change.getRemoved().get(0));
+		assertEquals(0, change.getInserted().size());
+		assertEquals(0, change.getUpdated().size());
+	}
+
+}
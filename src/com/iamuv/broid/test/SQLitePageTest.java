@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLitePage;
+
+/**
+ * 按字段值分页
+ */
+public class SQLitePageTest extends StorageTestCase {
+
+	@Table(database = DATABASE)
+	public static class Sample {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public double value;
+
+		public String kind;
+	}
+
+	private static final double[] VALUES = new double[] { 0.1, 1.0 / 3, 0.7, 2.0 / 3 };
+
+	private SQLiteDao<Sample> mSamples;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mSamples = Broid.getSQLiteDao(Sample.class);
+		mSamples.del();
+		for (int i = 0; i < 30; i++) {
+			Sample sample = new Sample();
+			sample.value = VALUES[i % VALUES.length];
+			sample.kind = i % 2 == 0 ? "even" : "odd";
+			mSamples.save(sample);
+		}
+	}
+
+	public void testPageByKey() {
+		ArrayList<Sample> result = readAll(mSamples.getPageByKey(false, 7));
+		assertEquals(30, result.size());
+		for (int i = 1; i < result.size(); i++) {
+			assertTrue(result.get(i - 1).id < result.get(i).id);
+		}
+	}
+
+	/**
+	 * REAL字段的值大量重复并跨越页的边界时不漏行也不重复
+	 */
+	public void testPageByDuplicateRealValues() {
+		assertAllOnce(readAll(mSamples.getPage("value", false, 7)), 30, false);
+		assertAllOnce(readAll(mSamples.getPage("value", true, 4)), 30, true);
+	}
+
+	public void testPageWithSelection() {
+		SQLitePage<Sample> page = mSamples.getPage("kind=?", new Object[] { "odd" }, "value", false, 4);
+		ArrayList<Sample> result = readAll(page);
+		assertAllOnce(result, 15, false);
+		for (int i = 0; i < result.size(); i++) {
+			assertEquals("odd", result.get(i).kind);
+		}
+	}
+
+	private ArrayList<Sample> readAll(SQLitePage<Sample> page) {
+		ArrayList<Sample> result = new ArrayList<Sample>();
+		result.addAll(page.getItems());
+		while (page.hasMore()) {
+			assertFalse(page.getItems().isEmpty());
+			page = mSamples.getNextPage(page);
+			result.addAll(page.getItems());
+		}
+		return result;
+	}
+
+	private static void assertAllOnce(ArrayList<Sample> result, int count, boolean desc) {
+		assertEquals(count, result.size());
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < result.size(); i++) {
+			assertTrue(ids.add(result.get(i).id));
+			if (i > 0) {
+				final double previous = result.get(i - 1).value;
+				final double current = result.get(i).value;
+				assertTrue(desc ? previous >= current : previous <= current);
+			}
+		}
+	}
+
+}
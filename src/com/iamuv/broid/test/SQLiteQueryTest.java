@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.DaoException;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteSelect;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 部分字段读取, 聚合与条件查询
+ */
+public class SQLiteQueryTest extends StorageTestCase {
+
+	/**
+	 * 投影类 只有与表字段同名的属性被读取
+	 */
+	public static class RecordName {
+
+		public String name;
+
+		public long count;
+
+		public String other = "initial";
+	}
+
+	private SQLiteDao<Record> mRecords;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+		for (int i = 0; i < 5; i++) {
+			Record record = SQLiteDaoTest.newRecord(i % 2 == 0 ? "even" : "odd", i);
+			record.score = i * 0.5;
+			record.data = new byte[] { (byte) i };
+			record.level = i == 4 ? null : Integer.valueOf(i);
+			record.flag = i == 1;
+			record.rate = Float.valueOf(i / 3f);
+			record.time = new Date(1000L * i);
+			mRecords.save(record);
+		}
+	}
+
+	/**
+	 * 只读取指定的字段, 其他属性保持初始值
+	 */
+	public void testColumns() {
+		ArrayList<Record> result = mRecords.get(new String[] { "name", "count" }, "count>?", new Object[] { 2 }, null, null, "count", null);
+		assertEquals(2, result.size());
+		assertEquals("odd", result.get(0).name);
+		assertEquals(3, result.get(0).count);
+		assertNull(result.get(0).data);
+		assertEquals(0, result.get(0).id);
+		assertEquals(0.0, result.get(0).score, 0);
+		assertTrue(mRecords.get(new String[] { "missing" }, null, null).isEmpty());
+	}
+
+	public void testProjection() {
+		ArrayList<RecordName> result = mRecords.get(RecordName.class, "name=?", new Object[] { "even" }, null, null, "count DESC", null);
+		assertEquals(3, result.size());
+		assertEquals("even", result.get(0).name);
+		assertEquals(4, result.get(0).count);
+		assertEquals("initial", result.get(0).other);
+	}
+
+	public void testAggregates() {
+		assertEquals(5, mRecords.count());
+		assertEquals(3, mRecords.count("name=?", new Object[] { "even" }));
+		assertTrue(mRecords.exists("count=?", new Object[] { 4 }));
+		assertFalse(mRecords.exists("count=?", new Object[] { 5 }));
+		assertEquals(0.0, mRecords.min("score", null, null), 0);
+		assertEquals(2.0, mRecords.max("score", null, null), 0);
+		assertEquals(10.0, mRecords.sum("count", null, null), 0);
+		assertEquals(4.0, mRecords.sum("count", "name=?", new Object[] { "odd" }), 0);
+		// null不参与平均值
+		assertEquals(1.5, mRecords.avg("level", null, null), 0);
+		assertNull(mRecords.max("count", "count>?", new Object[] { 10 }));
+		assertEquals(0.0, mRecords.sum("count", "count>?", new Object[] { 10 }), 0);
+		assertNull(mRecords.max("missing", null, null));
+	}
+
+	public void testCountBy() {
+		LinkedHashMap<String, Long> result = mRecords.countBy("name", null, null);
+		assertEquals(2, result.size());
+		assertEquals(Long.valueOf(3), result.get("even"));
+		assertEquals(Long.valueOf(2), result.get("odd"));
+		result = mRecords.countBy("level", null, null);
+		assertEquals(5, result.size());
+		assertEquals(Long.valueOf(1), result.get(null));
+	}
+
+	/**
+	 * 条件值按类型绑定, REAL, BLOB, Date与boolean不经过字符串转换
+	 */
+	public void testTypedSelect() {
+		assertEquals(1, mRecords.select().eq("score", 0.5).count());
+		assertEquals(1, mRecords.select().eq("rate", (double) (1 / 3f)).count());
+		assertEquals(1, mRecords.select().eq("data", new byte[] { 3 }).count());
+		assertEquals(1, mRecords.select().eq("flag", true).first().count);
+		assertEquals(2, mRecords.select().ge("time", new Date(3000)).count());
+		assertEquals(1, mRecords.select().isNull("level").count());
+		assertTrue(mRecords.select().in("count", 1L, 3, 5).exists());
+		assertEquals(2, mRecords.select().in("count", 1L, 3, 5).get().size());
+	}
+
+	/**
+	 * 构造完成的查询以新的条件值重复使用
+	 */
+	public void testReuseSelect() {
+		SQLiteSelect<Record> select = mRecords.select().eq("name", "even").gt("score", 0.0).orderByDesc("count");
+		ArrayList<Record> result = select.get();
+		assertEquals(2, result.size());
+		assertEquals(4, result.get(0).count);
+		result = select.get("odd", 0.5);
+		assertEquals(1, result.size());
+		assertEquals(3, result.get(0).count);
+		try {
+			select.get("odd");
+			fail();
+		} catch (DaoException e) {
+		}
+	}
+
+	/**
+	 * 条件值为null时以NULL绑定, 与字符串"null"不同, 与select的结果一致
+	 */
+	public void testNullSelectionArgs() {
+		mRecords.save(SQLiteDaoTest.newRecord("null", 10));
+		mRecords.save(SQLiteDaoTest.newRecord(null, 11));
+		assertEquals(0, mRecords.get("name=?", new Object[] { null }).size());
+		assertEquals(0, mRecords.select().eq("name", null).count());
+		assertEquals(11, mRecords.get("name IS ?", new Object[] { null }).get(0).count);
+		assertEquals(1, mRecords.count("name IS ?", new Object[] { null }));
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM table_record WHERE name IS ?", (Object) null));
+		mRecords.setQueryCacheSize(4, 100);
+		try {
+			assertEquals(10, mRecords.get("name IS ?", new Object[] { "null" }).get(0).count);
+			assertEquals(11, mRecords.get("name IS ?", new Object[] { null }).get(0).count);
+		} finally {
+			mRecords.setQueryCacheSize(0, 0);
+		}
+	}
+
+}
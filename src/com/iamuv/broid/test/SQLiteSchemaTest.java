@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.annotation.Column;
+import com.iamuv.broid.annotation.Index;
+import com.iamuv.broid.annotation.Table;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.test.SQLiteDaoTest.Record;
+
+/**
+ * 字段的存储类型与旧版本表结构的迁移
+ */
+public class SQLiteSchemaTest extends StorageTestCase {
+
+	@Table(database = DATABASE)
+	public static class Attachment {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public byte[] content;
+	}
+
+	@Table(database = DATABASE)
+	public static class Reading {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		public long time;
+
+		public double value;
+
+		public Boolean done;
+	}
+
+	@Table(database = DATABASE)
+	@Index(value = { "ownerId", "name" }, name = "owner_name", unique = true)
+	public static class Contact {
+
+		@Column(isAutoKey = true)
+		public int id;
+
+		@Index
+		public long ownerId;
+
+		public String name;
+
+		public String phone;
+	}
+
+	private SQLiteDao<Record> mRecords;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecords = Broid.getSQLiteDao(Record.class);
+		mRecords.del();
+	}
+
+	/**
+	 * byte[]以BLOB存储, 查询条件中的byte[]以BLOB绑定
+	 */
+	public void testBytesStoredAsBlob() {
+		final byte[] data = new byte[] { 0, 1, -1, 0x30 };
+		Record record = SQLiteDaoTest.newRecord("blob", 1);
+		record.data = data;
+		mRecords.save(record);
+		mRecords.save(SQLiteDaoTest.newRecord("empty", 2));
+		assertEquals("blob", queryString(mRecords, "SELECT typeof(data) FROM table_record WHERE name='blob'"));
+		assertEquals(4, queryLong(mRecords, "SELECT length(data) FROM table_record WHERE name='blob'"));
+		List<Record> result = mRecords.get("data=?", new Object[] { data });
+		assertEquals(1, result.size());
+		assertTrue(Arrays.equals(data, result.get(0).data));
+	}
+
+	/**
+	 * 旧版本以16进制TEXT保存的byte[]分批转换为BLOB, 行数超过一批
+	 */
+	public void testHexTextConvertedToBlob() throws Exception {
+		prepareTable("table_attachment", "CREATE TABLE table_attachment (id INTEGER PRIMARY KEY AUTOINCREMENT, content TEXT)",
+				"INSERT INTO table_attachment (content) VALUES ('00ff10')");
+		for (int i = 0; i < 10; i++) {
+			queryString(mRecords, "INSERT INTO table_attachment (content) SELECT content FROM table_attachment");
+		}
+		SQLiteDao<Attachment> attachments = new SQLiteDao<Attachment>(Attachment.class);
+		assertEquals(1024, attachments.count());
+		assertEquals(1024, queryLong(mRecords, "SELECT COUNT(*) FROM table_attachment WHERE typeof(content)='blob'"));
+		assertTrue(Arrays.equals(new byte[] { 0, -1, 16 }, attachments.get(null, null, null, null, null, "1").get(0).content));
+	}
+
+	/**
+	 * 数值字段以INTEGER与REAL存储, 按数值而不是字符串比较
+	 */
+	public void testNumericAffinity() {
+		final long[] counts = new long[] { 100, 9, 10 };
+		for (int i = 0; i < counts.length; i++) {
+			Record record = SQLiteDaoTest.newRecord("number " + i, counts[i]);
+			record.score = counts[i] / 4.0;
+			record.flag = true;
+			record.time = new Date(counts[i]);
+			mRecords.save(record);
+		}
+		assertEquals("integer", queryString(mRecords, "SELECT typeof(count) FROM table_record LIMIT 1"));
+		assertEquals("real", queryString(mRecords, "SELECT typeof(score) FROM table_record LIMIT 1"));
+		assertEquals("integer", queryString(mRecords, "SELECT typeof(flag) FROM table_record LIMIT 1"));
+		assertEquals("integer", queryString(mRecords, "SELECT typeof(time) FROM table_record LIMIT 1"));
+		ArrayList<Record> result = mRecords.get(null, null, null, null, "count", null);
+		assertEquals(9, result.get(0).count);
+		assertEquals(10, result.get(1).count);
+		assertEquals(100, result.get(2).count);
+		assertEquals(2, mRecords.count("time>?", new Object[] { 9L }));
+	}
+
+	/**
+	 * 旧版本以TEXT声明的数值字段重建为INTEGER与REAL, 数据, 自增序列与其他索引保留
+	 */
+	public void testTextColumnsRebuilt() throws Exception {
+		prepareTable("table_reading", "CREATE TABLE table_reading (id INTEGER PRIMARY KEY AUTOINCREMENT, time TEXT, value TEXT, done TEXT)",
+				"CREATE INDEX reading_time ON table_reading (time)",
+				"INSERT INTO table_reading (time, value, done) VALUES ('100', '2.5', 'true')",
+				"INSERT INTO table_reading (time, value, done) VALUES ('9', '0.5', 'false')",
+				"INSERT INTO table_reading (time, value, done) VALUES ('10', '1', NULL)");
+		SQLiteDao<Reading> readings = new SQLiteDao<Reading>(Reading.class);
+		assertEquals("integer", queryString(mRecords, "SELECT typeof(time) FROM table_reading WHERE id=1"));
+		assertEquals("real", queryString(mRecords, "SELECT typeof(value) FROM table_reading WHERE id=1"));
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE name='reading_time'"));
+		ArrayList<Reading> result = readings.get(null, null, null, null, "time", null);
+		assertEquals(3, result.size());
+		assertEquals(9, result.get(0).time);
+		assertEquals(Boolean.FALSE, result.get(0).done);
+		assertEquals(100, result.get(2).time);
+		assertEquals(2.5, result.get(2).value, 0);
+		assertEquals(Boolean.TRUE, result.get(2).done);
+		assertNull(result.get(1).done);
+		Reading reading = new Reading();
+		reading.time = 1000;
+		assertEquals(4, readings.save(reading));
+	}
+
+	/**
+	 * 创建声明的索引, 删除以"index_表名_"开头但不再声明的索引
+	 */
+	public void testDeclaredIndexes() throws Exception {
+		prepareTable("table_contact", "CREATE TABLE table_contact (id INTEGER PRIMARY KEY AUTOINCREMENT, ownerId INTEGER, name TEXT, phone TEXT)",
+				"CREATE INDEX index_table_contact_phone ON table_contact (phone)");
+		SQLiteDao<Contact> contacts = new SQLiteDao<Contact>(Contact.class);
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE name='index_table_contact_ownerId'"));
+		assertEquals(1, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE name='index_table_contact_owner_name'"));
+		assertEquals(0, queryLong(mRecords, "SELECT COUNT(*) FROM sqlite_master WHERE name='index_table_contact_phone'"));
+		Contact contact = new Contact();
+		contact.ownerId = 1;
+		contact.name = "name";
+		assertTrue(contacts.save(contact) > 0);
+		// 唯一索引拒绝重复的组合
+		assertEquals(-1, contacts.save(contact));
+		contact.ownerId = 2;
+		assertTrue(contacts.save(contact) > 0);
+	}
+
+	/**
+	 * 验证通过的表结构以指纹记录, 记录丢失后重新检查并恢复, 映射不变时指纹不变
+	 */
+	public void testSchemaFingerprint() throws Exception {
+		final String fingerprint = queryString(mRecords, "SELECT fingerprint FROM broid_schema WHERE name='table_record'");
+		assertNotNull(fingerprint);
+		assertEquals("id", queryString(mRecords, "SELECT auto_key FROM broid_schema WHERE name='table_record'"));
+		setSQLiteIdleTime(0);
+		queryString(mRecords, "DELETE FROM broid_schema WHERE name='table_record'");
+		SQLiteDao<Record> records = new SQLiteDao<Record>(Record.class);
+		assertEquals(fingerprint, queryString(mRecords, "SELECT fingerprint FROM broid_schema WHERE name='table_record'"));
+		assertTrue(records.save(SQLiteDaoTest.newRecord("after check", 1)) > 0);
+		assertEquals(1, mRecords.count());
+	}
+
+	/**
+	 * 用旧版本的表结构替换表, 并清除记录的表结构使下次创建Dao时重新检查 <br>
+	 * 连接在每次操作后关闭, 以丢弃连接上缓存的表结构
+	 */
+	void prepareTable(String table, String... sqls) throws Exception {
+		setSQLiteIdleTime(0);
+		queryString(mRecords, "DROP TABLE IF EXISTS " + table);
+		queryString(mRecords, "DELETE FROM broid_schema WHERE name=?", table);
+		for (int i = 0; i < sqls.length; i++) {
+			queryString(mRecords, sqls[i]);
+		}
+	}
+
+}
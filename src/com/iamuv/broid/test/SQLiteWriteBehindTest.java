@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteWriteBehind;
+import com.iamuv.broid.test.SQLiteSchemaTest.Contact;
+
+/**
+ * 延迟合并写入的提交与回滚
+ */
+public class SQLiteWriteBehindTest extends StorageTestCase {
+
+	private SQLiteDao<Contact> mContacts;
+
+	private SQLiteWriteBehind<Contact> mWriteBehind;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mContacts = Broid.getSQLiteDao(Contact.class);
+		mContacts.del();
+		mWriteBehind = mContacts.writeBehind();
+		mWriteBehind.flush();
+		mWriteBehind.setDelay(60 * 1000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mWriteBehind.setDelay(1000);
+		super.tearDown();
+	}
+
+	/**
+	 * 返回实际影响的行数, 不存在的主键不计入
+	 */
+	public void testFlushReturnsAppliedCount() {
+		mWriteBehind.save(newContact(1, "first"));
+		mWriteBehind.save(newContact(1, "second"));
+		assertEquals(2, mWriteBehind.size());
+		assertEquals(0, mContacts.count());
+		assertEquals(2, mWriteBehind.flush());
+		assertEquals(0, mWriteBehind.size());
+		Contact first = mContacts.get("name=?", new Object[] { "first" }).get(0);
+		first.phone = "changed";
+		mWriteBehind.updByKey(first);
+		mWriteBehind.delByKeys(first.id + 1000, first.id);
+		assertEquals(2, mWriteBehind.flush());
+		assertEquals(1, mContacts.count());
+		assertEquals(0, mWriteBehind.flush());
+	}
+
+	/**
+	 * 一个操作违反唯一约束时只丢弃该操作, 之后的操作仍然提交
+	 */
+	public void testConstraintViolationDropped() {
+		mWriteBehind.save(newContact(1, "first"));
+		mWriteBehind.save(newContact(1, "first"));
+		mWriteBehind.save(newContact(1, "second"));
+		mWriteBehind.delByKeys(1000000);
+		mWriteBehind.save(newContact(2, "first"));
+		assertEquals(3, mWriteBehind.flush());
+		assertEquals(0, mWriteBehind.size());
+		assertEquals(3, mContacts.count());
+		assertEquals(1, mContacts.count("ownerId=? AND name=?", new Object[] { 1, "first" }));
+		mWriteBehind.save(newContact(3, "third"));
+		assertEquals(1, mWriteBehind.flush());
+		assertEquals(4, mContacts.count());
+	}
+
+	private static Contact newContact(long ownerId, String name) {
+		Contact contact = new Contact();
+		contact.ownerId = ownerId;
+		contact.name = name;
+		return contact;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 The Broid Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.iamuv.broid.test;
+
+import java.lang.reflect.Field;
+
+import android.app.Application;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.iamuv.broid.Broid;
+import com.iamuv.broid.storage.SQLiteDao;
+import com.iamuv.broid.storage.SQLiteDao.rawQueryCallback;
+
+/**
+ * 存储相关测试的基类 在设备上通过InstrumentationTestRunner运行 <br>
+ * 测试使用独立的数据库文件{@link #DATABASE}, 每个测试开始前由子类清空用到的表
+ */
+public abstract class StorageTestCase extends AndroidTestCase {
+
+	static final String DATABASE = "broid_test.sqlite";
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Broid.onCreate((Application) getContext().getApplicationContext());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		setSQLiteIdleTime(30 * 1000);
+		super.tearDown();
+	}
+
+	/**
+	 * 修改连接的空闲关闭时间 为0时引用计数归零后立即关闭
+	 */
+	static void setSQLiteIdleTime(long idleTime) throws Exception {
+		Field field = Broid.class.getDeclaredField("mSQLiteIdleTime");
+		field.setAccessible(true);
+		field.setLong(null, idleTime);
+	}
+
+	/**
+	 * 通过rawQuery执行语句
+	 *
+	 * @return 第一行第一列的值 没有结果或执行失败时返回null
+	 */
+	static String queryString(SQLiteDao<?> dao, String sql, Object... args) {
+		final String[] result = new String[1];
+		dao.rawQuery(sql, args, new rawQueryCallback() {
+
+			@Override
+			public void processCursor(Cursor cursor) {
+				if (cursor.moveToFirst())
+					result[0] = cursor.getString(0);
+			}
+		});
+		return result[0];
+	}
+
+	static long queryLong(SQLiteDao<?> dao, String sql, Object... args) {
+		String result = queryString(dao, sql, args);
+		return result == null ? -1 : Long.parseLong(result);
+	}
+
+}